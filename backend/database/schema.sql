@@ -1,3 +1,6 @@
+-- Baseline schema. Later changes (indexes, new tables) are applied on startup by the
+-- backend's versioned migrations in src/main/resources/db/migration.
+
 -- Brands table (tenants)
 CREATE TABLE IF NOT EXISTS brands (
   id INT AUTO_INCREMENT PRIMARY KEY,
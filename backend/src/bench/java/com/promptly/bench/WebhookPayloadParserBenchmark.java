@@ -0,0 +1,142 @@
+package com.promptly.bench;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.promptly.dto.WebhookComment;
+import com.promptly.dto.WebhookEntry;
+import com.promptly.service.WebhookPayloadParser;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bytes allocated and time spent per comment by {@link WebhookPayloadParser}, against
+ * binding the same delivery to a Map tree and walking it, as webhook processing did
+ * before the streaming parser.
+ *
+ * Allocation is read from the JVM's per-thread allocated-bytes counter around each
+ * run. The delivery has 50 entries of 20 comments, in either the "changes" shape or
+ * the legacy comments.data shape. Each round runs both paths iterations times; the
+ * first round is warm-up.
+ *
+ * Built only with the bench profile (see README):
+ * java -cp ... com.promptly.bench.WebhookPayloadParserBenchmark [changes|legacy] [iterations] [rounds]
+ */
+public class WebhookPayloadParserBenchmark {
+
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() {};
+
+    private static final int ENTRIES = 50;
+    private static final int COMMENTS_PER_ENTRY = 20;
+
+    public static void main(String[] args) throws Exception {
+        boolean legacy = args.length > 0 && args[0].equals("legacy");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        byte[] body = delivery(legacy);
+        ObjectMapper objectMapper = new ObjectMapper();
+        WebhookPayloadParser parser = new WebhookPayloadParser();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int comments = ENTRIES * COMMENTS_PER_ENTRY;
+
+        // Consumed values go here so the JIT cannot drop the work
+        long sink = 0;
+        for (int round = 0; round < rounds; round++) {
+            long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += readAsMap(objectMapper, body, legacy);
+            }
+            long mapBytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+            long mapNanos = System.nanoTime() - start;
+
+            bytesBefore = threads.getCurrentThreadAllocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += readStreaming(parser, body);
+            }
+            long streamingBytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+            long streamingNanos = System.nanoTime() - start;
+
+            System.out.printf("%s%s, %d bytes: map %d B/comment %.0f ns/comment | streaming %d B/comment %.0f ns/comment%n",
+                    round == 0 ? "warm-up " : "", legacy ? "legacy" : "changes", body.length,
+                    mapBytes / iterations / comments, (double) mapNanos / iterations / comments,
+                    streamingBytes / iterations / comments, (double) streamingNanos / iterations / comments);
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private static long readStreaming(WebhookPayloadParser parser, byte[] body) throws Exception {
+        long consumed = 0;
+        for (WebhookEntry entry : parser.parse(body)) {
+            consumed += entry.instagramAccountId().length();
+            for (WebhookComment comment : entry.comments()) {
+                consumed += comment.id().length() + (comment.username() != null ? comment.username().length() : 0);
+                if (comment.text() != null) {
+                    consumed++;
+                }
+            }
+        }
+        return consumed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long readAsMap(ObjectMapper objectMapper, byte[] body, boolean legacy) throws Exception {
+        Map<String, Object> payload = objectMapper.readValue(body, JSON_OBJECT);
+        long consumed = 0;
+        for (Map<String, Object> entry : (List<Map<String, Object>>) payload.get("entry")) {
+            consumed += ((String) entry.get("id")).length();
+            List<Map<String, Object>> data;
+            if (legacy) {
+                data = (List<Map<String, Object>>) ((Map<String, Object>) entry.get("comments")).get("data");
+            } else {
+                data = new ArrayList<>();
+                for (Map<String, Object> change : (List<Map<String, Object>>) entry.get("changes")) {
+                    data.add((Map<String, Object>) change.get("value"));
+                }
+            }
+            for (Map<String, Object> comment : data) {
+                consumed += ((String) comment.get("id")).length();
+                Map<String, Object> from = (Map<String, Object>) comment.get("from");
+                if (from != null) {
+                    consumed += ((String) from.get("username")).length();
+                }
+                if (comment.get("text") != null) {
+                    consumed++;
+                }
+            }
+        }
+        return consumed;
+    }
+
+    private static byte[] delivery(boolean legacy) {
+        StringBuilder json = new StringBuilder("{\"object\":\"instagram\",\"entry\":[");
+        for (int e = 0; e < ENTRIES; e++) {
+            if (e > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"1784140530921").append(e).append("\",\"time\":1700000000,");
+            json.append(legacy ? "\"comments\":{\"data\":[" : "\"changes\":[");
+            for (int c = 0; c < COMMENTS_PER_ENTRY; c++) {
+                if (c > 0) {
+                    json.append(',');
+                }
+                String media = legacy
+                        ? "\"media_id\":\"1790" + e + "\""
+                        : "\"media\":{\"id\":\"1790" + e + "\",\"media_product_type\":\"FEED\"}";
+                String comment = "{\"id\":\"1800" + e + "_" + c + "\"," +
+                        "\"text\":\"Love this look, where is the jacket from? #" + c + "\"," +
+                        "\"from\":{\"id\":\"99" + c + "\",\"username\":\"follower_" + c + "\"}," +
+                        media + ",\"parent_id\":null}";
+                json.append(legacy ? comment : "{\"field\":\"comments\",\"value\":" + comment + "}");
+            }
+            json.append(legacy ? "]}}" : "]}");
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
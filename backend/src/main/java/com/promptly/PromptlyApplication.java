@@ -2,8 +2,10 @@ package com.promptly;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class PromptlyApplication {
     public static void main(String[] args) {
         SpringApplication.run(PromptlyApplication.class, args);
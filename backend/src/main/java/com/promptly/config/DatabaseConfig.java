@@ -49,7 +49,7 @@ public class DatabaseConfig {
                 logger.info("✓ Found {} tables in database", tableCount);
 
                 // Test required tables
-                String[] requiredTables = {"brands", "users", "instagram_accounts", "comments", "replies", "admin_activity_logs"};
+                String[] requiredTables = {"brands", "users", "instagram_accounts", "comments", "replies", "admin_activity_logs", "comment_counters", "media_sync_watermarks", "sync_jobs", "sync_job_checkpoints"};
                 for (String table : requiredTables) {
                     try {
                         Integer count = jdbcTemplate.queryForObject(
@@ -0,0 +1,218 @@
+package com.promptly.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies versioned SQL migrations on startup, since Hibernate runs with
+ * ddl-auto=none. Scripts live in db/migration and are named
+ * V{version}__{description}.sql; database/schema.sql is the baseline they apply on top of.
+ *
+ * Every applied script is recorded in schema_migrations with a SHA-256 checksum.
+ * Startup fails if an applied script was edited afterwards or a previous run failed
+ * half way, because MySQL DDL is not transactional and the schema needs a manual look.
+ * A MySQL named lock keeps concurrently starting nodes from migrating at the same time.
+ */
+@Component
+public class SchemaMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final String LOCK_NAME = "promptly_schema_migrations";
+    private static final int LOCK_TIMEOUT_SECONDS = 300;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${database.migrations.enabled:true}")
+    private boolean enabled;
+
+    @Value("${database.migrations.location:classpath*:db/migration/*.sql}")
+    private String location;
+
+    @PostConstruct
+    public void migrate() {
+        if (!enabled) {
+            logger.info("Schema migrations are disabled");
+            return;
+        }
+
+        List<Migration> migrations = loadMigrations();
+
+        try (Connection connection = dataSource.getConnection()) {
+            acquireLock(connection);
+            try {
+                createHistoryTable(connection);
+                Map<Integer, AppliedMigration> applied = loadHistory(connection);
+
+                int appliedNow = 0;
+                for (Migration migration : migrations) {
+                    AppliedMigration previous = applied.remove(migration.version);
+                    if (previous == null) {
+                        apply(connection, migration);
+                        appliedNow++;
+                    } else if (!previous.success) {
+                        throw new RuntimeException(String.format(
+                                "Migration V%d (%s) failed on a previous run; fix the schema and delete its schema_migrations row",
+                                migration.version, migration.description));
+                    } else if (!previous.checksum.equals(migration.checksum)) {
+                        throw new RuntimeException(String.format(
+                                "Migration V%d (%s) was changed after it was applied (checksum %s, expected %s)",
+                                migration.version, migration.description, migration.checksum, previous.checksum));
+                    }
+                }
+
+                for (Integer unknown : applied.keySet()) {
+                    logger.warn("Migration V{} is recorded in schema_migrations but not present in this build", unknown);
+                }
+                logger.info("Schema is up to date: {} migration(s) applied now, {} known", appliedNow, migrations.size());
+            } finally {
+                releaseLock(connection);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Schema migration failed", e);
+        }
+    }
+
+    private List<Migration> loadMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+        try {
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources(location)) {
+                Matcher matcher = FILE_NAME.matcher(resource.getFilename() != null ? resource.getFilename() : "");
+                if (!matcher.matches()) {
+                    logger.warn("Ignoring migration file with unexpected name: {}", resource.getFilename());
+                    continue;
+                }
+                String content = new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                migrations.add(new Migration(
+                        Integer.parseInt(matcher.group(1)),
+                        matcher.group(2).replace('_', ' '),
+                        checksum(content),
+                        resource));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read migrations from " + location, e);
+        }
+
+        migrations.sort(Comparator.comparingInt(migration -> migration.version));
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).version == migrations.get(i - 1).version) {
+                throw new RuntimeException("Duplicate migration version V" + migrations.get(i).version);
+            }
+        }
+        return migrations;
+    }
+
+    private void apply(Connection connection, Migration migration) throws SQLException {
+        logger.info("Applying migration V{}: {}", migration.version, migration.description);
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            ScriptUtils.executeSqlScript(connection, new EncodedResource(migration.resource, StandardCharsets.UTF_8));
+            success = true;
+        } finally {
+            recordHistory(connection, migration, System.currentTimeMillis() - start, success);
+        }
+    }
+
+    private void createHistoryTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS schema_migrations (" +
+                    "version INT PRIMARY KEY, " +
+                    "description VARCHAR(255) NOT NULL, " +
+                    "checksum CHAR(64) NOT NULL, " +
+                    "execution_ms BIGINT NOT NULL, " +
+                    "success BOOLEAN NOT NULL, " +
+                    "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+        }
+    }
+
+    private Map<Integer, AppliedMigration> loadHistory(Connection connection) throws SQLException {
+        Map<Integer, AppliedMigration> applied = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT version, checksum, success FROM schema_migrations")) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), new AppliedMigration(rs.getString("checksum"), rs.getBoolean("success")));
+            }
+        }
+        return applied;
+    }
+
+    private void recordHistory(Connection connection, Migration migration, long executionMs, boolean success) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO schema_migrations (version, description, checksum, execution_ms, success) VALUES (?, ?, ?, ?, ?)")) {
+            statement.setInt(1, migration.version);
+            statement.setString(2, migration.description);
+            statement.setString(3, migration.checksum);
+            statement.setLong(4, executionMs);
+            statement.setBoolean(5, success);
+            statement.executeUpdate();
+        }
+    }
+
+    private void acquireLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new RuntimeException("Timed out waiting for the schema migration lock");
+                }
+            }
+        }
+    }
+
+    private void releaseLock(Connection connection) {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.executeQuery().close();
+        } catch (SQLException e) {
+            logger.warn("Failed to release schema migration lock: {}", e.getMessage());
+        }
+    }
+
+    private static String checksum(String content) {
+        try {
+            // Normalise line endings so a checkout on Windows does not look like an edit
+            byte[] bytes = content.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Migration(int version, String description, String checksum, Resource resource) {
+    }
+
+    private record AppliedMigration(String checksum, boolean success) {
+    }
+}
@@ -0,0 +1,18 @@
+package com.promptly.config;
+
+import org.springframework.boot.sql.init.dependency.AbstractBeansOfTypeDatabaseInitializerDetector;
+
+import java.util.Set;
+
+/**
+ * Registers {@link SchemaMigrator} as a database initializer (via META-INF/spring.factories),
+ * so Spring Boot makes the EntityManagerFactory, JdbcTemplates and every other bean that
+ * depends on database initialization wait until the migrations have been applied.
+ */
+public class SchemaMigratorDatabaseInitializerDetector extends AbstractBeansOfTypeDatabaseInitializerDetector {
+
+    @Override
+    protected Set<Class<?>> getDatabaseInitializerBeanTypes() {
+        return Set.of(SchemaMigrator.class);
+    }
+}
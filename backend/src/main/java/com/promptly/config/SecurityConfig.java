@@ -1,9 +1,13 @@
 package com.promptly.config;
 
 import com.promptly.security.JwtAuthenticationFilter;
+import com.promptly.security.WebhookAdmissionFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -32,11 +36,15 @@ public class SecurityConfig {
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
+                // Async dispatches (SSE, streamed responses) and error dispatches (a 400 from
+                // ResponseStatusException, say) were already authorised on the original request
+                .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
                 .requestMatchers("/api/auth/login", "/api/auth/register").permitAll()
                 .requestMatchers("/api/webhooks/**").permitAll()
                 .requestMatchers("/api/instagram/callback").permitAll()
                 .requestMatchers("/health").permitAll()
                 .requestMatchers("/api/admin/**").hasRole("ADMIN")
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
                 .anyRequest().authenticated()
             )
             .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
@@ -44,6 +52,19 @@ public class SecurityConfig {
         return http.build();
     }
 
+    /**
+     * Admission control applies to the webhook endpoint only. URL patterns let the
+     * container do the matching, so a trailing slash, a context path or path parameters
+     * such as ;jsessionid cannot route around it.
+     */
+    @Bean
+    public FilterRegistrationBean<WebhookAdmissionFilter> webhookAdmissionFilterRegistration(WebhookAdmissionFilter filter) {
+        FilterRegistrationBean<WebhookAdmissionFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/api/webhooks", "/api/webhooks/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
@@ -1,15 +1,89 @@
 package com.promptly.config;
 
+import com.promptly.service.GraphRateLimiter;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration
 public class WebClientConfig {
 
+    @Value("${graph.api.base-url:https://graph.facebook.com/v18.0}")
+    private String graphApiBaseUrl;
+
+    @Value("${graph.http.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${graph.http.pending-acquire-timeout-ms:30000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${graph.http.max-idle-time-ms:50000}")
+    private long maxIdleTimeMs;
+
+    @Value("${graph.http.max-life-time-ms:300000}")
+    private long maxLifeTimeMs;
+
+    @Value("${graph.http.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    @Value("${graph.http.response-timeout-ms:30000}")
+    private long responseTimeoutMs;
+
+    @Value("${graph.http.max-response-bytes:16777216}")
+    private int maxResponseBytes;
+
     @Bean
     public WebClient.Builder webClientBuilder() {
         return WebClient.builder();
     }
-}
 
+    /**
+     * Connection pool for the Graph API. Idle connections are dropped before Meta's side
+     * closes them, so a reused connection is not found dead mid-request.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider graphConnectionProvider() {
+        return ConnectionProvider.builder("graph-api")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .maxLifeTime(Duration.ofMillis(maxLifeTimeMs))
+                .evictInBackground(Duration.ofSeconds(30))
+                .build();
+    }
+
+    /**
+     * Shared client behind GraphApiClient: pooled keep-alive connections (HTTP/2 over
+     * TLS when the server offers it, gzip responses), with every call going through the
+     * rate limiter.
+     */
+    @Bean
+    public WebClient graphWebClient(WebClient.Builder webClientBuilder, ConnectionProvider graphConnectionProvider,
+                                    GraphRateLimiter graphRateLimiter) {
+        HttpClient httpClient = HttpClient.create(graphConnectionProvider)
+                .protocol(graphApiBaseUrl.startsWith("https:")
+                        ? new HttpProtocol[] {HttpProtocol.H2, HttpProtocol.HTTP11}
+                        : new HttpProtocol[] {HttpProtocol.HTTP11})
+                .compress(true)
+                .keepAlive(true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
+
+        return webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                // Batch responses carry up to 50 pages of comments
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(maxResponseBytes))
+                .baseUrl(graphApiBaseUrl)
+                .filter(graphRateLimiter)
+                .build();
+    }
+}
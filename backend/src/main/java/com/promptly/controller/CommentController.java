@@ -1,14 +1,26 @@
 package com.promptly.controller;
 
 import com.promptly.dto.CommentDto;
+import com.promptly.dto.CommentPage;
+import com.promptly.dto.CommentSearchResult;
 import com.promptly.dto.ReplyDto;
 import com.promptly.dto.ReplyRequest;
+import com.promptly.entity.SyncJob;
+import com.promptly.service.CommentExportService;
 import com.promptly.service.CommentService;
+import com.promptly.service.InboxEventHub;
+import com.promptly.service.JwtService;
+import com.promptly.service.SyncJobService;
+import com.promptly.service.SyncScheduler;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.HashMap;
 import java.util.List;
@@ -22,28 +34,109 @@ public class CommentController {
     @Autowired
     private CommentService commentService;
 
+    @Autowired
+    private InboxEventHub inboxEventHub;
+
+    @Autowired
+    private CommentExportService commentExportService;
+
+    @Autowired
+    private SyncScheduler syncScheduler;
+
+    @Autowired
+    private SyncJobService syncJobService;
+
+    @Autowired
+    private JwtService jwtService;
+
     @GetMapping
     public ResponseEntity<Map<String, Object>> getComments(
             @RequestParam(required = false) String status,
             @RequestParam(defaultValue = "50") int limit,
             @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(required = false) String cursor,
             Authentication authentication) {
         
         Integer brandId = getBrandId(authentication);
-        List<CommentDto> comments = commentService.getComments(brandId, status, limit, offset);
+        CommentPage page = commentService.getComments(brandId, status, limit, cursor, offset);
         long total = commentService.getCommentsCount(brandId, status);
         
         Map<String, Object> response = new HashMap<>();
-        response.put("comments", comments);
+        response.put("comments", page.getComments());
         Map<String, Object> pagination = new HashMap<>();
         pagination.put("total", total);
-        pagination.put("limit", limit);
+        pagination.put("limit", page.getLimit());
         pagination.put("offset", offset);
+        pagination.put("next_cursor", page.getNextCursor());
         response.put("pagination", pagination);
         
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> searchComments(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(defaultValue = "0") int offset,
+            Authentication authentication) {
+        
+        Integer brandId = getBrandId(authentication);
+        CommentSearchResult result = commentService.searchComments(brandId, query, limit, offset);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("comments", result.getComments());
+        Map<String, Object> pagination = new HashMap<>();
+        pagination.put("total", result.getTotal());
+        pagination.put("limit", result.getLimit());
+        pagination.put("offset", offset);
+        response.put("pagination", pagination);
+        
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/stream/token")
+    public ResponseEntity<Map<String, Object>> createStreamToken(Authentication authentication) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> details = (Map<String, Object>) authentication.getDetails();
+        String token = jwtService.generateStreamToken((Integer) details.get("userId"), (String) details.get("role"),
+                (Integer) details.get("brandId"));
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("token", token);
+        response.put("expires_in", jwtService.getStreamTokenTtlMs() / 1000);
+        
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamComments(
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+            Authentication authentication) {
+        
+        Integer brandId = getBrandId(authentication);
+        return inboxEventHub.subscribe(brandId, lastEventId);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportComments(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "comments") String type,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            Authentication authentication) {
+        
+        Integer brandId = getBrandId(authentication);
+        CommentExportService.Format exportFormat = commentExportService.parseFormat(format);
+        CommentExportService.Dataset dataset = commentExportService.parseDataset(type);
+        
+        StreamingResponseBody body = out -> commentExportService.export(brandId, dataset, exportFormat, gzip, out);
+        
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + commentExportService.fileName(dataset, exportFormat, gzip) + "\"")
+                .body(body);
+    }
+
     @GetMapping("/{commentId}")
     public ResponseEntity<Map<String, Object>> getComment(
             @PathVariable Integer commentId,
@@ -51,7 +144,7 @@ public class CommentController {
         
         Integer brandId = getBrandId(authentication);
         CommentDto comment = commentService.getComment(commentId, brandId);
-        List<ReplyDto> replies = commentService.getReplies(commentId);
+        List<ReplyDto> replies = commentService.getReplies(commentId, brandId);
         
         Map<String, Object> response = new HashMap<>();
         response.put("comment", comment);
@@ -81,15 +174,42 @@ public class CommentController {
     @PostMapping("/sync")
     public ResponseEntity<Map<String, Object>> syncComments(Authentication authentication) {
         Integer brandId = getBrandId(authentication);
-        int commentsAdded = commentService.syncComments(brandId);
+        SyncJob job = syncScheduler.requestSync(brandId);
+        
+        Map<String, Object> response = toSyncJobResponse(job);
+        response.put("message", job.getStatus() == SyncJob.Status.RUNNING ? "Sync already running" : "Sync queued");
+        
+        return ResponseEntity.accepted().body(response);
+    }
+
+    @GetMapping("/sync/{jobId}")
+    public ResponseEntity<Map<String, Object>> getSyncJob(@PathVariable Long jobId, Authentication authentication) {
+        Integer brandId = getBrandId(authentication);
+        SyncJob job = syncJobService.findJob(jobId, brandId)
+                .orElseThrow(() -> new RuntimeException("Sync job not found"));
         
         Map<String, Object> response = new HashMap<>();
-        response.put("message", "Sync completed");
-        response.put("comments_added", commentsAdded);
+        response.put("job", toSyncJobResponse(job));
         
         return ResponseEntity.ok(response);
     }
 
+    private Map<String, Object> toSyncJobResponse(SyncJob job) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("job_id", job.getId());
+        response.put("status", job.getStatus().name().toLowerCase());
+        response.put("trigger", job.getTriggerType().name().toLowerCase());
+        response.put("media_total", job.getMediaTotal());
+        response.put("media_done", job.getMediaDone());
+        response.put("media_failed", job.getMediaFailed());
+        response.put("comments_added", job.getCommentsAdded());
+        response.put("error", job.getError());
+        response.put("created_at", job.getCreatedAt());
+        response.put("started_at", job.getStartedAt());
+        response.put("finished_at", job.getFinishedAt());
+        return response;
+    }
+
     private Integer getBrandId(Authentication authentication) {
         if (authentication != null && authentication.getDetails() != null) {
             @SuppressWarnings("unchecked")
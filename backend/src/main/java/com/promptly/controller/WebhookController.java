@@ -1,23 +1,28 @@
 package com.promptly.controller;
 
-import com.promptly.service.WebhookService;
+import com.promptly.service.WebhookIdempotency;
+import com.promptly.service.WebhookLog;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.Map;
-
 @RestController
 @RequestMapping("/api/webhooks")
 public class WebhookController {
 
     @Autowired
-    private WebhookService webhookService;
+    private WebhookLog webhookLog;
+
+    @Autowired
+    private WebhookIdempotency webhookIdempotency;
 
     @Value("${webhook.verify.token}")
     private String verifyToken;
 
+    @Value("${webhook.admission.retry-after-seconds:30}")
+    private int retryAfterSeconds;
+
     @GetMapping
     public ResponseEntity<String> verifyWebhook(
             @RequestParam("hub.mode") String mode,
@@ -31,12 +36,30 @@ public class WebhookController {
         return ResponseEntity.status(403).build();
     }
 
+    /**
+     * Acknowledges a delivery once it is durable in the webhook log; it is stored in
+     * the database afterwards by the log's drain workers. A redelivery of a body
+     * already logged within the idempotency window is acknowledged without being logged
+     * again; one that arrives while the first copy is still being appended gets a 503,
+     * since that append may yet fail.
+     */
     @PostMapping
-    public ResponseEntity<Void> handleWebhook(@RequestBody Map<String, Object> payload) {
+    public ResponseEntity<Void> handleWebhook(@RequestBody byte[] payload) {
+        switch (webhookIdempotency.claimDelivery(payload)) {
+            case DUPLICATE:
+                return ResponseEntity.ok().build();
+            case IN_PROGRESS:
+                return ResponseEntity.status(503).header("Retry-After", String.valueOf(retryAfterSeconds)).build();
+            default:
+                break;
+        }
         try {
-            webhookService.processWebhook(payload);
+            webhookLog.append(payload);
+            webhookIdempotency.confirmDelivery(payload);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
+            // Let Meta's retry through
+            webhookIdempotency.releaseDelivery(payload);
             return ResponseEntity.status(500).build();
         }
     }
@@ -0,0 +1,46 @@
+package com.promptly.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position in the inbox, i.e. the (timestamp, id) of the last
+ * comment on the previous page. Clients only ever echo the encoded form back.
+ * The 0-based index of the page it leads to is carried along as a caching hint.
+ * A cursor that does not decode is the client's error and answered with 400.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CommentCursor {
+    private LocalDateTime timestamp;
+    private Integer id;
+    private int page;
+
+    public String encode() {
+        String raw = timestamp.toString() + "|" + id + "|" + page;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static CommentCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|");
+            if (parts.length != 2 && parts.length != 3) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+            }
+            int page = parts.length == 3 ? Integer.parseInt(parts[2]) : -1;
+            return new CommentCursor(LocalDateTime.parse(parts[0]), Integer.parseInt(parts[1]), page);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor", e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.promptly.dto;
 
+import com.promptly.entity.Comment;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -22,5 +23,17 @@ public class CommentDto {
     private String accountUsername;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+
+    /**
+     * Used by the JPQL constructor projections in CommentRepository, which
+     * select the account username through a join instead of a lookup per row.
+     */
+    public CommentDto(Integer id, String commentId, String mediaId, String parentId, String text,
+                      String username, String userId, LocalDateTime timestamp, Integer likeCount,
+                      Comment.CommentStatus status, String accountUsername,
+                      LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this(id, commentId, mediaId, parentId, text, username, userId, timestamp, likeCount,
+                status != null ? status.name() : null, accountUsername, createdAt, updatedAt);
+    }
 }
 
@@ -0,0 +1,16 @@
+package com.promptly.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CommentPage {
+    private List<CommentDto> comments;
+    private String nextCursor;
+    // Page size actually applied, after clamping the requested limit
+    private int limit;
+}
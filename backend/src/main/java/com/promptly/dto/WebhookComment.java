@@ -0,0 +1,16 @@
+package com.promptly.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * A comment as delivered by an Instagram webhook. likeCount is 0 when not sent.
+ * timestamp (UTC) is the comment's own "timestamp" when sent, otherwise the entry's
+ * "time"; null if the delivery carries neither.
+ */
+public record WebhookComment(String id, String text, String mediaId, String parentId,
+                             String userId, String username, int likeCount, LocalDateTime timestamp) {
+
+    public WebhookComment withTimestamp(LocalDateTime timestamp) {
+        return new WebhookComment(id, text, mediaId, parentId, userId, username, likeCount, timestamp);
+    }
+}
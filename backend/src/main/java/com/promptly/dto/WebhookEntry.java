@@ -0,0 +1,10 @@
+package com.promptly.dto;
+
+import java.util.List;
+
+/**
+ * One entry of an Instagram webhook delivery: the account it is for and the comments
+ * it carries, from either "changes" (field "comments") or the legacy "comments.data".
+ */
+public record WebhookEntry(String instagramAccountId, List<WebhookComment> comments) {
+}
@@ -31,13 +31,13 @@ public class Comment {
     @Column(name = "parent_id")
     private String parentId;
 
-    @Column(nullable = false, columnDefinition = "TEXT")
+    @Column(columnDefinition = "TEXT")
     private String text;
 
-    @Column(nullable = false)
+    @Column
     private String username;
 
-    @Column(name = "user_id", nullable = false)
+    @Column(name = "user_id")
     private String userId;
 
     @Column(nullable = false)
@@ -0,0 +1,44 @@
+package com.promptly.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Running number of comments per (brand, status). Maintained in the same
+ * transaction as comment inserts and status changes, and periodically
+ * reconciled against the comments table by CommentCounterService.
+ */
+@Entity
+@Table(name = "comment_counters")
+@IdClass(CommentCounter.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CommentCounter {
+    @Id
+    @Column(name = "brand_id")
+    private Integer brandId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Comment.CommentStatus status;
+
+    @Column(name = "comment_count", nullable = false)
+    private Long commentCount = 0L;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Integer brandId;
+        private Comment.CommentStatus status;
+    }
+}
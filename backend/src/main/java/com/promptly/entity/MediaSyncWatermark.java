@@ -0,0 +1,46 @@
+package com.promptly.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * How far comment sync has read a media item: the newest comment timestamp seen
+ * and the comments_count the Graph API reported at the time. Advanced only after
+ * the media's comments have been persisted.
+ */
+@Entity
+@Table(name = "media_sync_watermarks")
+@IdClass(MediaSyncWatermark.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MediaSyncWatermark {
+    @Id
+    @Column(name = "instagram_account_id")
+    private Integer instagramAccountId;
+
+    @Id
+    @Column(name = "media_id")
+    private String mediaId;
+
+    @Column(name = "last_comment_at")
+    private LocalDateTime lastCommentAt;
+
+    @Column(name = "comments_count", nullable = false)
+    private Integer commentsCount = 0;
+
+    @Column(name = "synced_at")
+    private LocalDateTime syncedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Integer instagramAccountId;
+        private String mediaId;
+    }
+}
@@ -0,0 +1,95 @@
+package com.promptly.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * One comment sync of a brand's Instagram account. A job stays QUEUED or RUNNING
+ * until it finishes; an unfinished job is picked up again (from its checkpoints)
+ * instead of starting a new one. The node working on a job holds a lease on it
+ * (owner, lease_expires_at) that other nodes respect until it expires.
+ */
+@Entity
+@Table(name = "sync_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "brand_id", nullable = false)
+    private Integer brandId;
+
+    @Column(name = "instagram_account_id", nullable = false)
+    private Integer instagramAccountId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "trigger_type", nullable = false)
+    private Trigger triggerType;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status = Status.QUEUED;
+
+    // Lease columns are only written by SyncJobRepository's lease queries
+    @Column(length = 100, insertable = false, updatable = false)
+    private String owner;
+
+    @Column(name = "lease_expires_at", insertable = false, updatable = false)
+    private LocalDateTime leaseExpiresAt;
+
+    @Column(name = "media_total", nullable = false)
+    private Integer mediaTotal = 0;
+
+    @Column(name = "media_done", nullable = false)
+    private Integer mediaDone = 0;
+
+    @Column(name = "media_failed", nullable = false)
+    private Integer mediaFailed = 0;
+
+    @Column(name = "comments_added", nullable = false)
+    private Integer commentsAdded = 0;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public enum Trigger {
+        MANUAL, SCHEDULED
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+}
@@ -0,0 +1,56 @@
+package com.promptly.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * A media item a sync job has to read, recorded when the job lists the account's
+ * media. Each stored page of the media's comments records the next page to request
+ * in the same transaction, and the last page marks it DONE, so a resumed job only
+ * reads what is still PENDING, starting from nextPage.
+ */
+@Entity
+@Table(name = "sync_job_checkpoints")
+@IdClass(SyncJobCheckpoint.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncJobCheckpoint {
+    @Id
+    @Column(name = "job_id")
+    private Long jobId;
+
+    @Id
+    @Column(name = "media_id")
+    private String mediaId;
+
+    @Column(name = "comments_count")
+    private Integer commentsCount;
+
+    // Relative Graph API URL of the next comments page; null until the first page is stored
+    @Column(name = "next_page", columnDefinition = "TEXT")
+    private String nextPage;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status = Status.PENDING;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public enum Status {
+        PENDING, DONE, FAILED
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long jobId;
+        private String mediaId;
+    }
+}
@@ -0,0 +1,35 @@
+package com.promptly.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * A brand's background sync schedule: its current polling interval and when the next
+ * run is due. Written only through SyncScheduleRepository's queries, which time
+ * everything on the database clock.
+ */
+@Entity
+@Table(name = "sync_schedules")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncSchedule {
+    @Id
+    @Column(name = "brand_id")
+    private Integer brandId;
+
+    @Column(name = "interval_ms", nullable = false)
+    private Long intervalMs;
+
+    @Column(name = "next_run_at", nullable = false)
+    private LocalDateTime nextRunAt;
+
+    @Column(length = 100)
+    private String owner;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
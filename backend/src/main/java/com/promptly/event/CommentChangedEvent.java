@@ -0,0 +1,21 @@
+package com.promptly.event;
+
+import com.promptly.entity.Comment;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Published whenever a brand's comments change. Listeners that must not see
+ * uncommitted data use @TransactionalEventListener, which delivers it after commit.
+ */
+@Data
+@AllArgsConstructor
+public class CommentChangedEvent {
+    private Integer brandId;
+    private Type type;
+    private Comment comment;
+
+    public enum Type {
+        CREATED, STATUS_CHANGED
+    }
+}
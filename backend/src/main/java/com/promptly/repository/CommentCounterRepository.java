@@ -0,0 +1,32 @@
+package com.promptly.repository;
+
+import com.promptly.entity.CommentCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+
+@Repository
+public interface CommentCounterRepository extends JpaRepository<CommentCounter, CommentCounter.Key> {
+    List<CommentCounter> findByBrandId(Integer brandId);
+
+    @Modifying
+    @Query(value = "INSERT INTO comment_counters (brand_id, status, comment_count, updated_at) " +
+                   "VALUES (:brandId, :status, :delta, NOW()) " +
+                   "ON DUPLICATE KEY UPDATE comment_count = comment_count + :delta, updated_at = NOW()",
+           nativeQuery = true)
+    int increment(@Param("brandId") Integer brandId, @Param("status") String status, @Param("delta") long delta);
+
+    @Modifying
+    @Query(value = "INSERT INTO comment_counters (brand_id, status, comment_count, updated_at) " +
+                   "VALUES (:brandId, :status, :count, NOW()) " +
+                   "ON DUPLICATE KEY UPDATE comment_count = :count, updated_at = NOW()",
+           nativeQuery = true)
+    int set(@Param("brandId") Integer brandId, @Param("status") String status, @Param("count") long count);
+
+    // Locking read so concurrent increments for the brand wait until a reconciliation commits
+    @Query(value = "SELECT * FROM comment_counters WHERE brand_id = :brandId FOR UPDATE", nativeQuery = true)
+    List<CommentCounter> lockByBrandId(@Param("brandId") Integer brandId);
+}
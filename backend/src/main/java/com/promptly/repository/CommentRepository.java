@@ -1,28 +1,92 @@
 package com.promptly.repository;
 
+import com.promptly.dto.CommentDto;
 import com.promptly.entity.Comment;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface CommentRepository extends JpaRepository<Comment, Integer> {
-    @Query("SELECT c FROM Comment c WHERE c.brandId = :brandId ORDER BY c.timestamp DESC")
-    List<Comment> findByBrandIdOrderByTimestampDesc(@Param("brandId") Integer brandId);
-    
-    @Query("SELECT c FROM Comment c WHERE c.brandId = :brandId AND c.status = :status ORDER BY c.timestamp DESC")
-    List<Comment> findByBrandIdAndStatus(@Param("brandId") Integer brandId, @Param("status") Comment.CommentStatus status);
-    
+    String DTO_SELECT = "SELECT new com.promptly.dto.CommentDto(c.id, c.commentId, c.mediaId, c.parentId, c.text, " +
+            "c.username, c.userId, c.timestamp, c.likeCount, c.status, a.username, c.createdAt, c.updatedAt) " +
+            "FROM Comment c LEFT JOIN c.instagramAccount a ";
+
+    // Keyset (seek) pagination: callers pass a Pageable of size "limit" so only that many rows are read.
+    // The account username comes from the join, so a page is a single query.
+    @Query(DTO_SELECT + "WHERE c.brandId = :brandId ORDER BY c.timestamp DESC, c.id DESC")
+    List<CommentDto> findPageByBrandId(@Param("brandId") Integer brandId, Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE c.brandId = :brandId " +
+           "AND (c.timestamp < :timestamp OR (c.timestamp = :timestamp AND c.id < :id)) " +
+           "ORDER BY c.timestamp DESC, c.id DESC")
+    List<CommentDto> findPageByBrandIdBefore(@Param("brandId") Integer brandId,
+                                             @Param("timestamp") LocalDateTime timestamp,
+                                             @Param("id") Integer id,
+                                             Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE c.brandId = :brandId AND c.status = :status ORDER BY c.timestamp DESC, c.id DESC")
+    List<CommentDto> findPageByBrandIdAndStatus(@Param("brandId") Integer brandId,
+                                                @Param("status") Comment.CommentStatus status,
+                                                Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE c.brandId = :brandId AND c.status = :status " +
+           "AND (c.timestamp < :timestamp OR (c.timestamp = :timestamp AND c.id < :id)) " +
+           "ORDER BY c.timestamp DESC, c.id DESC")
+    List<CommentDto> findPageByBrandIdAndStatusBefore(@Param("brandId") Integer brandId,
+                                                      @Param("status") Comment.CommentStatus status,
+                                                      @Param("timestamp") LocalDateTime timestamp,
+                                                      @Param("id") Integer id,
+                                                      Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE c.brandId = :brandId AND c.id IN :ids")
+    List<CommentDto> findDtosByBrandIdAndIdIn(@Param("brandId") Integer brandId, @Param("ids") Collection<Integer> ids);
+
+    // Batched scan in primary key order, used to build and catch up the in-memory search index
+    List<Comment> findByIdGreaterThanOrderByIdAsc(Integer id, Pageable pageable);
+
     Optional<Comment> findByCommentId(String commentId);
+
+    // (commentId, id) pairs of the given comments stored with an id in [firstId, endId)
+    @Query("SELECT c.commentId, c.id FROM Comment c WHERE c.commentId IN :commentIds AND c.id >= :firstId AND c.id < :endId")
+    List<Object[]> findIdsByCommentIdInIdRange(@Param("commentIds") Collection<String> commentIds,
+                                               @Param("firstId") Integer firstId,
+                                               @Param("endId") Integer endId);
+
+    @Query("SELECT c.commentId FROM Comment c WHERE c.commentId IN :commentIds")
+    List<String> findExistingCommentIds(@Param("commentIds") Collection<String> commentIds);
     Optional<Comment> findByIdAndBrandId(Integer id, Integer brandId);
+
+    @Query(DTO_SELECT + "WHERE c.id = :id AND c.brandId = :brandId")
+    Optional<CommentDto> findDtoByIdAndBrandId(@Param("id") Integer id, @Param("brandId") Integer brandId);
     
     @Query("SELECT COUNT(c) FROM Comment c WHERE c.brandId = :brandId")
     Long countByBrandId(@Param("brandId") Integer brandId);
     
     @Query("SELECT COUNT(c) FROM Comment c WHERE c.brandId = :brandId AND c.status = :status")
     Long countByBrandIdAndStatus(@Param("brandId") Integer brandId, @Param("status") Comment.CommentStatus status);
-}
 
+    // Used only by counter reconciliation; returns (status, count) pairs
+    @Query("SELECT c.status, COUNT(c) FROM Comment c WHERE c.brandId = :brandId GROUP BY c.status")
+    List<Object[]> countByBrandIdGroupByStatus(@Param("brandId") Integer brandId);
+
+    // Forward-only cursor for exports. A fetch size of Integer.MIN_VALUE makes MySQL Connector/J
+    // stream rows one at a time instead of buffering the whole result set; callers must consume
+    // the stream inside a transaction and close it.
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT c FROM Comment c WHERE c.brandId = :brandId ORDER BY c.id")
+    Stream<Comment> streamByBrandId(@Param("brandId") Integer brandId);
+}
@@ -2,7 +2,11 @@ package com.promptly.repository;
 
 import com.promptly.entity.InstagramAccount;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,5 +15,10 @@ public interface InstagramAccountRepository extends JpaRepository<InstagramAccou
     Optional<InstagramAccount> findByBrandIdAndIsConnected(Integer brandId, Boolean isConnected);
     Optional<InstagramAccount> findByInstagramBusinessAccountId(String instagramBusinessAccountId);
     List<InstagramAccount> findByBrandId(Integer brandId);
+    List<InstagramAccount> findByIsConnected(Boolean isConnected);
+
+    @Modifying
+    @Query("UPDATE InstagramAccount a SET a.lastSyncAt = :lastSyncAt WHERE a.id = :id")
+    int updateLastSyncAt(@Param("id") Integer id, @Param("lastSyncAt") LocalDateTime lastSyncAt);
 }
 
@@ -0,0 +1,11 @@
+package com.promptly.repository;
+
+import com.promptly.entity.MediaSyncWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+
+@Repository
+public interface MediaSyncWatermarkRepository extends JpaRepository<MediaSyncWatermark, MediaSyncWatermark.Key> {
+    List<MediaSyncWatermark> findByInstagramAccountId(Integer instagramAccountId);
+}
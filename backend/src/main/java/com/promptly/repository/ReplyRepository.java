@@ -1,15 +1,34 @@
 package com.promptly.repository;
 
+import com.promptly.dto.ReplyDto;
 import com.promptly.entity.Reply;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface ReplyRepository extends JpaRepository<Reply, Integer> {
-    List<Reply> findByCommentIdOrderBySentAtDesc(Integer commentId);
+    // A reply thread with its authors' names in one query
+    @Query("SELECT new com.promptly.dto.ReplyDto(r.id, r.replyId, r.text, r.sentAt, u.fullName) " +
+           "FROM Reply r LEFT JOIN User u ON u.id = r.userId " +
+           "WHERE r.commentId = :commentId AND r.brandId = :brandId ORDER BY r.sentAt DESC")
+    List<ReplyDto> findDtosByCommentIdAndBrandId(@Param("commentId") Integer commentId, @Param("brandId") Integer brandId);
     Optional<Reply> findByReplyId(String replyId);
     List<Reply> findByBrandId(Integer brandId);
+
+    // Forward-only cursor for exports, see CommentRepository#streamByBrandId
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT r FROM Reply r WHERE r.brandId = :brandId ORDER BY r.id")
+    Stream<Reply> streamByBrandId(@Param("brandId") Integer brandId);
 }
 
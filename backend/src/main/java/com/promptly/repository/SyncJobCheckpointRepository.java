@@ -0,0 +1,28 @@
+package com.promptly.repository;
+
+import com.promptly.entity.SyncJobCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface SyncJobCheckpointRepository extends JpaRepository<SyncJobCheckpoint, SyncJobCheckpoint.Key> {
+    List<SyncJobCheckpoint> findByJobIdAndStatus(Long jobId, SyncJobCheckpoint.Status status);
+
+    boolean existsByJobId(Long jobId);
+
+    @Modifying
+    @Query("UPDATE SyncJobCheckpoint c SET c.status = :status, c.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE c.jobId = :jobId AND c.mediaId IN :mediaIds")
+    int updateStatus(@Param("jobId") Long jobId, @Param("mediaIds") Collection<String> mediaIds,
+                     @Param("status") SyncJobCheckpoint.Status status);
+
+    @Modifying
+    @Query("UPDATE SyncJobCheckpoint c SET c.nextPage = :nextPage, c.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE c.jobId = :jobId AND c.mediaId = :mediaId")
+    int updateNextPage(@Param("jobId") Long jobId, @Param("mediaId") String mediaId, @Param("nextPage") String nextPage);
+}
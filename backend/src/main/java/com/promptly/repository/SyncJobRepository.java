@@ -0,0 +1,58 @@
+package com.promptly.repository;
+
+import com.promptly.entity.SyncJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SyncJobRepository extends JpaRepository<SyncJob, Long> {
+    Optional<SyncJob> findByIdAndBrandId(Long id, Integer brandId);
+
+    Optional<SyncJob> findFirstByBrandIdAndStatusInOrderByIdDesc(Integer brandId, Collection<SyncJob.Status> statuses);
+
+    // Lease times are compared on the database clock, which all nodes share
+    @Query(value = "SELECT id FROM sync_jobs WHERE status IN ('QUEUED', 'RUNNING') " +
+                   "AND (lease_expires_at IS NULL OR lease_expires_at < NOW()) ORDER BY id", nativeQuery = true)
+    List<Long> findUnfinishedIdsWithExpiredLease();
+
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE sync_jobs SET owner = :owner, lease_expires_at = NOW() + INTERVAL :seconds SECOND " +
+                   "WHERE id = :id AND status IN ('QUEUED', 'RUNNING') " +
+                   "AND (owner IS NULL OR owner = :owner OR lease_expires_at IS NULL OR lease_expires_at < NOW())",
+           nativeQuery = true)
+    int acquireLease(@Param("id") Long id, @Param("owner") String owner, @Param("seconds") long seconds);
+
+    @Modifying
+    @Query(value = "UPDATE sync_jobs SET lease_expires_at = NOW() + INTERVAL :seconds SECOND " +
+                   "WHERE id IN :ids AND owner = :owner", nativeQuery = true)
+    int renewLeases(@Param("ids") Collection<Long> ids, @Param("owner") String owner, @Param("seconds") long seconds);
+
+    @Query(value = "SELECT id FROM sync_jobs WHERE id IN :ids AND owner = :owner", nativeQuery = true)
+    List<Long> findIdsOwnedBy(@Param("ids") Collection<Long> ids, @Param("owner") String owner);
+
+    // Locks the job's row until the transaction ends if the owner still holds it, so no
+    // other node can take the job over while the transaction writes to it
+    @Query(value = "SELECT id FROM sync_jobs WHERE id = :id AND owner = :owner FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockIfOwnedBy(@Param("id") Long id, @Param("owner") String owner);
+
+    @Modifying
+    @Query(value = "UPDATE sync_jobs SET owner = NULL, lease_expires_at = NULL WHERE id IN :ids AND owner = :owner",
+           nativeQuery = true)
+    int releaseLeases(@Param("ids") Collection<Long> ids, @Param("owner") String owner);
+
+    @Modifying
+    @Query("UPDATE SyncJob j SET j.mediaDone = j.mediaDone + :done, j.mediaFailed = j.mediaFailed + :failed, " +
+           "j.commentsAdded = j.commentsAdded + :added, j.updatedAt = CURRENT_TIMESTAMP WHERE j.id = :id")
+    int addProgress(@Param("id") Long id, @Param("done") int done, @Param("failed") int failed, @Param("added") int added);
+
+    @Modifying
+    @Query("DELETE FROM SyncJob j WHERE j.status IN :statuses AND j.finishedAt < :before")
+    int deleteFinishedBefore(@Param("statuses") Collection<SyncJob.Status> statuses, @Param("before") LocalDateTime before);
+}
@@ -0,0 +1,34 @@
+package com.promptly.repository;
+
+import com.promptly.entity.SyncSchedule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+
+@Repository
+public interface SyncScheduleRepository extends JpaRepository<SyncSchedule, Integer> {
+    @Query(value = "SELECT brand_id FROM sync_schedules WHERE next_run_at <= NOW(3) ORDER BY next_run_at", nativeQuery = true)
+    List<Integer> findDueBrandIds();
+
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO sync_schedules (brand_id, interval_ms, next_run_at, updated_at) " +
+                   "VALUES (:brandId, :intervalMs, NOW(3) + INTERVAL :delayMs * 1000 MICROSECOND, NOW())",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("brandId") Integer brandId, @Param("intervalMs") long intervalMs, @Param("delayMs") long delayMs);
+
+    // Only succeeds while the run is still due, so exactly one node claims it
+    @Modifying
+    @Query(value = "UPDATE sync_schedules SET owner = :owner, next_run_at = NOW(3) + INTERVAL :leaseSeconds SECOND, " +
+                   "updated_at = NOW() WHERE brand_id = :brandId AND next_run_at <= NOW(3)", nativeQuery = true)
+    int claimDue(@Param("brandId") Integer brandId, @Param("owner") String owner, @Param("leaseSeconds") long leaseSeconds);
+
+    @Modifying
+    @Query(value = "INSERT INTO sync_schedules (brand_id, interval_ms, next_run_at, updated_at) " +
+                   "VALUES (:brandId, :intervalMs, NOW(3) + INTERVAL :delayMs * 1000 MICROSECOND, NOW()) " +
+                   "ON DUPLICATE KEY UPDATE interval_ms = VALUES(interval_ms), next_run_at = VALUES(next_run_at), " +
+                   "owner = NULL, updated_at = VALUES(updated_at)", nativeQuery = true)
+    int reschedule(@Param("brandId") Integer brandId, @Param("intervalMs") long intervalMs, @Param("delayMs") long delayMs);
+}
@@ -20,6 +20,10 @@ import java.util.Map;
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    // EventSource cannot set headers, so the stream also takes a stream-only token in the URL
+    private static final String STREAM_PATH = "/api/comments/stream";
+    private static final String STREAM_TOKEN_PARAM = "access_token";
+
     @Autowired
     private JwtService jwtService;
 
@@ -28,12 +32,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
         
         String authHeader = request.getHeader("Authorization");
+        String streamToken = STREAM_PATH.equals(request.getServletPath()) ? request.getParameter(STREAM_TOKEN_PARAM) : null;
         
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            String token = authHeader.substring(7);
-            
+        if ((authHeader != null && authHeader.startsWith("Bearer ")) || streamToken != null) {
             try {
-                JwtService.JwtClaims claims = jwtService.validateToken(token);
+                JwtService.JwtClaims claims = authHeader != null && authHeader.startsWith("Bearer ")
+                        ? jwtService.validateToken(authHeader.substring(7))
+                        : jwtService.validateStreamToken(streamToken);
                 
                 // Store claims in authentication details
                 Map<String, Object> details = new HashMap<>();
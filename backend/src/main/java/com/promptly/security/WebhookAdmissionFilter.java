@@ -0,0 +1,138 @@
+package com.promptly.security;
+
+import com.promptly.service.WebhookLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for webhook deliveries (POST /api/webhooks), so a burst cannot take
+ * the request threads and database connections interactive endpoints need.
+ *
+ * At most webhook.admission.max-concurrent deliveries are handled at once. Up to
+ * webhook.admission.max-queued more wait for a slot, each for at most
+ * webhook.admission.queue-timeout-ms. Deliveries are also refused while the webhook log
+ * holds more than webhook.admission.max-backlog-bytes not yet drained into the
+ * database. Refused deliveries get an immediate 503 with Retry-After, and Meta
+ * redelivers them later. Registered in {@link com.promptly.config.SecurityConfig} on the
+ * webhook URL patterns, ahead of the security filters so refusing costs nothing.
+ *
+ * Metrics: webhook.admission.requests{result=admitted|queue_full|timeout|backlog} and
+ * the webhook.admission.active gauge.
+ */
+@Component
+public class WebhookAdmissionFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private WebhookLog webhookLog;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${webhook.admission.max-concurrent:16}")
+    private int maxConcurrent;
+
+    @Value("${webhook.admission.max-queued:64}")
+    private int maxQueued;
+
+    @Value("${webhook.admission.queue-timeout-ms:200}")
+    private long queueTimeoutMs;
+
+    @Value("${webhook.admission.max-backlog-bytes:268435456}")
+    private long maxBacklogBytes;
+
+    @Value("${webhook.admission.retry-after-seconds:30}")
+    private int retryAfterSeconds;
+
+    private Semaphore permits;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private Counter admittedCounter;
+    private Counter queueFullCounter;
+    private Counter timeoutCounter;
+    private Counter backlogCounter;
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrent, true);
+        admittedCounter = requestCounter("admitted");
+        queueFullCounter = requestCounter("queue_full");
+        timeoutCounter = requestCounter("timeout");
+        backlogCounter = requestCounter("backlog");
+        Gauge.builder("webhook.admission.active", this, filter -> filter.maxConcurrent - filter.permits.availablePermits())
+                .description("Webhook deliveries currently being handled")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // The path is matched by the container through the filter's URL patterns
+        return !"POST".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        if (webhookLog.backlogBytes() > maxBacklogBytes) {
+            reject(response, backlogCounter);
+            return;
+        }
+
+        if (!permits.tryAcquire()) {
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                reject(response, queueFullCounter);
+                return;
+            }
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            } finally {
+                queued.decrementAndGet();
+            }
+            if (!acquired) {
+                reject(response, timeoutCounter);
+                return;
+            }
+        }
+
+        admittedCounter.increment();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void reject(HttpServletResponse response, Counter counter) {
+        counter.increment();
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+    }
+
+    private Counter requestCounter(String result) {
+        return Counter.builder("webhook.admission.requests")
+                .description("Webhook deliveries admitted or refused by admission control")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -30,10 +30,10 @@ public class AdminService {
     private UserRepository userRepository;
 
     @Autowired
-    private CommentRepository commentRepository;
+    private AdminActivityLogRepository activityLogRepository;
 
     @Autowired
-    private AdminActivityLogRepository activityLogRepository;
+    private CommentCounterService commentCounterService;
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -83,10 +83,11 @@ public class AdminService {
                 .filter(u -> brandId.equals(u.getBrandId()))
                 .collect(Collectors.toList());
 
+        Map<Comment.CommentStatus, Long> counts = commentCounterService.getCounts(brandId);
         Map<String, Object> stats = new HashMap<>();
-        stats.put("total_comments", commentRepository.countByBrandId(brandId));
-        stats.put("open_comments", commentRepository.countByBrandIdAndStatus(brandId, Comment.CommentStatus.OPEN));
-        stats.put("replied_comments", commentRepository.countByBrandIdAndStatus(brandId, Comment.CommentStatus.REPLIED));
+        stats.put("total_comments", counts.values().stream().mapToLong(Long::longValue).sum());
+        stats.put("open_comments", counts.get(Comment.CommentStatus.OPEN));
+        stats.put("replied_comments", counts.get(Comment.CommentStatus.REPLIED));
 
         Map<String, Object> result = new HashMap<>();
         result.put("brand", toDto(brand));
@@ -0,0 +1,232 @@
+package com.promptly.service;
+
+import com.promptly.entity.Comment;
+import com.promptly.repository.CommentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk writer for ingested comments.
+ *
+ * Comment ids are IDENTITY-generated, which stops Hibernate from batching inserts,
+ * so ingestion writes multi-row INSERT ... ON DUPLICATE KEY UPDATE id = id statements
+ * of up to comments.ingest.jdbc-batch-size rows instead. The no-op update skips rows
+ * that already exist without touching them, while any other error (an over-long
+ * value, a missing brand) still fails the statement. Whether a row was inserted is
+ * taken from what the statement did, never from what the caller expected: the first
+ * generated key is where the statement's block of ids starts (there is none when
+ * nothing was inserted), and the inserted rows are the statement's comment_ids with
+ * an id inside that block. The affected-row count cannot tell: Connector/J reports
+ * found rows, so an existing row counts the same as a new one.
+ *
+ * Rows that already exist are left alone by {@link #insertNew}; {@link #upsert} also
+ * refreshes their like_count and text, and reports how many rows that changed. Status
+ * and everything else the brand has changed is never touched.
+ *
+ * Metrics: comments.ingest.write (timer per call) and comments.ingest.rows.
+ */
+@Component
+public class CommentBatchWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommentBatchWriter.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO comments (brand_id, instagram_account_id, comment_id, media_id, parent_id, text, " +
+            "username, user_id, timestamp, like_count, status, created_at, updated_at) VALUES ";
+
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SKIP_EXISTING = " ON DUPLICATE KEY UPDATE id = id";
+
+    // Graph omits text for some comments; a missing value keeps what is stored. Rows
+    // whose values are already current are not matched, so the counts are real changes.
+    private static final String REFRESH_SQL =
+            "UPDATE comments SET like_count = COALESCE(?, like_count), text = COALESCE(?, text) " +
+            "WHERE comment_id = ? AND NOT (like_count <=> COALESCE(?, like_count) AND text <=> COALESCE(?, text))";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${comments.ingest.jdbc-batch-size:1000}")
+    private int jdbcBatchSize;
+
+    private Timer writeTimer;
+    private Counter rowCounter;
+
+    @PostConstruct
+    public void registerMetrics() {
+        writeTimer = Timer.builder("comments.ingest.write")
+                .description("Time spent upserting a batch of ingested comments")
+                .register(meterRegistry);
+        rowCounter = Counter.builder("comments.ingest.rows")
+                .description("Comment rows written by the ingestion upsert")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Inserts the comments that are not stored yet and returns exactly those, with their
+     * generated ids filled in (for counters, events and the search index). Existing rows
+     * are not modified.
+     */
+    public List<Comment> insertNew(List<Comment> comments) {
+        if (comments.isEmpty()) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        for (Comment comment : comments) {
+            comment.setCreatedAt(now);
+            comment.setUpdatedAt(now);
+        }
+
+        List<Comment> inserted = new ArrayList<>();
+        for (int i = 0; i < comments.size(); i += jdbcBatchSize) {
+            inserted.addAll(insertChunk(comments.subList(i, Math.min(comments.size(), i + jdbcBatchSize))));
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        writeTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        rowCounter.increment(comments.size());
+        logger.debug("Wrote {} comments ({} new) in {} ms", comments.size(), inserted.size(), elapsedNanos / 1_000_000);
+        return inserted;
+    }
+
+    /**
+     * Outcome of {@link #upsert}: the comments inserted (as from {@link #insertNew}) and
+     * the number of stored comments whose like_count or text changed.
+     */
+    public record UpsertResult(List<Comment> inserted, int refreshed) {
+    }
+
+    /**
+     * Like {@link #insertNew}, and refreshes like_count and text of the comments that
+     * were already stored.
+     */
+    public UpsertResult upsert(List<Comment> comments) {
+        List<Comment> inserted = insertNew(comments);
+        Set<String> insertedIds = new HashSet<>();
+        for (Comment comment : inserted) {
+            insertedIds.add(comment.getCommentId());
+        }
+        List<Comment> existing = comments.stream()
+                .filter(comment -> !insertedIds.contains(comment.getCommentId()))
+                .toList();
+        int refreshed = 0;
+        if (!existing.isEmpty()) {
+            int[][] counts = jdbcTemplate.batchUpdate(REFRESH_SQL, existing, jdbcBatchSize, (statement, comment) -> {
+                if (comment.getLikeCount() != null) {
+                    statement.setInt(1, comment.getLikeCount());
+                    statement.setInt(4, comment.getLikeCount());
+                } else {
+                    statement.setNull(1, Types.INTEGER);
+                    statement.setNull(4, Types.INTEGER);
+                }
+                statement.setString(2, comment.getText());
+                statement.setString(3, comment.getCommentId());
+                statement.setString(5, comment.getText());
+            });
+            for (int[] batch : counts) {
+                for (int count : batch) {
+                    refreshed += Math.max(0, count);
+                }
+            }
+        }
+        return new UpsertResult(inserted, refreshed);
+    }
+
+    private List<Comment> insertChunk(List<Comment> chunk) {
+        String sql = INSERT_SQL + String.join(", ", Collections.nCopies(chunk.size(), ROW_PLACEHOLDERS)) + SKIP_EXISTING;
+        Long firstId = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                int index = 1;
+                for (Comment comment : chunk) {
+                    index = bind(statement, index, comment);
+                }
+                statement.executeUpdate();
+                // The first generated key is the id of the first row inserted; there are
+                // no keys when every row already existed
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    return keys.next() ? keys.getLong(1) : 0L;
+                }
+            }
+        });
+        if (firstId == null || firstId == 0) {
+            return List.of();
+        }
+
+        // The statement's ids are allocated as one block of at most one id per row,
+        // starting at firstId, so the rows it inserted are its comment_ids inside that
+        // block. Rows stored before have lower ids; a row another writer inserted
+        // meanwhile can only come after the block.
+        Set<String> commentIds = new HashSet<>();
+        for (Comment comment : chunk) {
+            commentIds.add(comment.getCommentId());
+        }
+        Map<String, Integer> generatedIds = new HashMap<>(chunk.size() * 2);
+        for (Object[] row : commentRepository.findIdsByCommentIdInIdRange(commentIds,
+                firstId.intValue(), (int) (firstId + chunk.size()))) {
+            generatedIds.put((String) row[0], (Integer) row[1]);
+        }
+        List<Comment> inserted = new ArrayList<>(generatedIds.size());
+        for (Comment comment : chunk) {
+            Integer id = generatedIds.remove(comment.getCommentId());
+            if (id != null) {
+                comment.setId(id);
+                inserted.add(comment);
+            }
+        }
+        return inserted;
+    }
+
+    private int bind(PreparedStatement statement, int index, Comment comment) throws SQLException {
+        statement.setInt(index++, comment.getBrandId());
+        statement.setInt(index++, comment.getInstagramAccountId());
+        statement.setString(index++, comment.getCommentId());
+        statement.setString(index++, comment.getMediaId());
+        statement.setString(index++, comment.getParentId());
+        statement.setString(index++, comment.getText());
+        statement.setString(index++, comment.getUsername());
+        statement.setString(index++, comment.getUserId());
+        statement.setTimestamp(index++, Timestamp.valueOf(comment.getTimestamp()));
+        if (comment.getLikeCount() != null) {
+            statement.setInt(index++, comment.getLikeCount());
+        } else {
+            statement.setNull(index++, Types.INTEGER);
+        }
+        statement.setString(index++, comment.getStatus().name());
+        statement.setTimestamp(index++, Timestamp.valueOf(comment.getCreatedAt()));
+        statement.setTimestamp(index++, Timestamp.valueOf(comment.getUpdatedAt()));
+        return index;
+    }
+}
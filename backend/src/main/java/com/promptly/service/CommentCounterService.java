@@ -0,0 +1,166 @@
+package com.promptly.service;
+
+import com.promptly.entity.Brand;
+import com.promptly.entity.Comment;
+import com.promptly.entity.CommentCounter;
+import com.promptly.repository.BrandRepository;
+import com.promptly.repository.CommentCounterRepository;
+import com.promptly.repository.CommentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * O(1) comment counts per brand and status, backed by the comment_counters table.
+ * Writers call {@link #recordInsert} / {@link #recordTransition} inside the same
+ * transaction that changes the comments, and {@link #reconcileAll} periodically
+ * recomputes the counters from the comments table to repair any drift. The scheduled
+ * run takes a MySQL named lock first, so only one node reconciles at a time and the
+ * others skip their turn instead of queueing on the same row locks.
+ */
+@Service
+public class CommentCounterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommentCounterService.class);
+
+    private static final String RECONCILE_LOCK_NAME = "promptly_comment_counter_reconcile";
+
+    @Autowired
+    private CommentCounterRepository commentCounterRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    public void recordInsert(Integer brandId, Comment.CommentStatus status, long count) {
+        if (count > 0) {
+            commentCounterRepository.increment(brandId, status.name(), count);
+        }
+    }
+
+    public void recordTransition(Integer brandId, Comment.CommentStatus from, Comment.CommentStatus to) {
+        if (from == to) {
+            return;
+        }
+        commentCounterRepository.increment(brandId, from.name(), -1);
+        commentCounterRepository.increment(brandId, to.name(), 1);
+    }
+
+    public Map<Comment.CommentStatus, Long> getCounts(Integer brandId) {
+        Map<Comment.CommentStatus, Long> counts = new EnumMap<>(Comment.CommentStatus.class);
+        for (Comment.CommentStatus status : Comment.CommentStatus.values()) {
+            counts.put(status, 0L);
+        }
+        for (CommentCounter counter : commentCounterRepository.findByBrandId(brandId)) {
+            counts.put(counter.getStatus(), Math.max(0L, counter.getCommentCount()));
+        }
+        return counts;
+    }
+
+    /**
+     * Count for one status, or across all statuses when status is null.
+     */
+    public long getCount(Integer brandId, Comment.CommentStatus status) {
+        Map<Comment.CommentStatus, Long> counts = getCounts(brandId);
+        if (status != null) {
+            return counts.get(status);
+        }
+        return counts.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Scheduled(initialDelayString = "${comments.counters.reconcile-initial-delay-ms:60000}",
+               fixedDelayString = "${comments.counters.reconcile-interval-ms:3600000}")
+    public void reconcileAll() {
+        // The named lock belongs to this connection's session, so it is held on a
+        // connection of its own while the reconcile transactions use pooled ones, and
+        // goes away by itself if this node dies half way
+        try (Connection connection = dataSource.getConnection()) {
+            if (!tryLock(connection)) {
+                logger.debug("Comment counters are being reconciled by another node, skipping");
+                return;
+            }
+            try {
+                for (Brand brand : brandRepository.findAll()) {
+                    try {
+                        reconcile(brand.getId());
+                    } catch (Exception e) {
+                        logger.error("Failed to reconcile comment counters for brand {}: {}", brand.getId(), e.getMessage());
+                    }
+                }
+            } finally {
+                releaseLock(connection);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to reconcile comment counters: {}", e.getMessage());
+        }
+    }
+
+    public void reconcile(Integer brandId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Lock first: the count below then takes its snapshot after any in-flight
+            // writer for this brand has committed, and later writers queue behind us.
+            List<CommentCounter> current = commentCounterRepository.lockByBrandId(brandId);
+
+            Map<Comment.CommentStatus, Long> actual = new EnumMap<>(Comment.CommentStatus.class);
+            for (Comment.CommentStatus commentStatus : Comment.CommentStatus.values()) {
+                actual.put(commentStatus, 0L);
+            }
+            for (Object[] row : commentRepository.countByBrandIdGroupByStatus(brandId)) {
+                actual.put((Comment.CommentStatus) row[0], ((Number) row[1]).longValue());
+            }
+
+            for (Map.Entry<Comment.CommentStatus, Long> entry : actual.entrySet()) {
+                long stored = current.stream()
+                        .filter(counter -> counter.getStatus() == entry.getKey())
+                        .mapToLong(CommentCounter::getCommentCount)
+                        .findFirst()
+                        .orElse(-1L);
+                if (stored != entry.getValue()) {
+                    if (stored >= 0) {
+                        logger.warn("Comment counter drift for brand {} status {}: stored {}, actual {}",
+                                brandId, entry.getKey(), stored, entry.getValue());
+                    }
+                    commentCounterRepository.set(brandId, entry.getKey().name(), entry.getValue());
+                }
+            }
+        });
+    }
+
+    private boolean tryLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            statement.setString(1, RECONCILE_LOCK_NAME);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void releaseLock(Connection connection) {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, RECONCILE_LOCK_NAME);
+            statement.executeQuery().close();
+        } catch (SQLException e) {
+            logger.warn("Failed to release comment counter reconcile lock: {}", e.getMessage());
+        }
+    }
+}
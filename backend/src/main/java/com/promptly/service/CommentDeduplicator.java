@@ -0,0 +1,331 @@
+package com.promptly.service;
+
+import com.promptly.repository.CommentRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Narrows a batch of incoming Instagram comment ids down to the ones worth trying to
+ * insert, before any write.
+ *
+ * Ids are checked in order against: comments claimed by an in-flight transaction,
+ * a small LRU of ids recently seen stored, and a Bloom filter of every stored
+ * comment_id (loaded in the background at startup). Ids the Bloom filter has never
+ * seen are candidates without touching MySQL; only the "maybe" ids are resolved, with
+ * one IN query per batch. The filter only knows ids this process has loaded or seen
+ * stored, so a candidate may well exist already (stored by another node, or by a sync
+ * before the filter was loaded): whether a comment is new is decided by the insert
+ * itself, see {@link CommentBatchWriter#insertNew}.
+ *
+ * Ids returned by {@link #claimCandidates} stay claimed until the caller's transaction
+ * completes, so a concurrent sync and webhook on this node do not both try the same
+ * comment; they are recorded as stored only if it commits. Writers that do not claim
+ * report what they stored with {@link #recordStored}.
+ *
+ * Metrics: comments.dedup.ids{result=recent|claimed|bloom_new|db_existing|db_new}.
+ */
+@Component
+public class CommentDeduplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommentDeduplicator.class);
+
+    private static final int MAX_IN_LIST = 1000;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${comments.dedup.bloom-enabled:true}")
+    private boolean bloomEnabled;
+
+    @Value("${comments.dedup.bloom-min-capacity:1000000}")
+    private long bloomMinCapacity;
+
+    @Value("${comments.dedup.bloom-false-positive-rate:0.01}")
+    private double bloomFalsePositiveRate;
+
+    @Value("${comments.dedup.recent-size:100000}")
+    private int recentSize;
+
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+
+    private Map<String, Boolean> recent;
+
+    // Set as soon as loading starts so inserts made meanwhile are not missed;
+    // only consulted once bloomReady is true
+    private volatile BloomFilter bloom;
+    private volatile boolean bloomReady;
+
+    private final AtomicLong recentHits = new AtomicLong();
+    private final AtomicLong claimedHits = new AtomicLong();
+    private final AtomicLong bloomNew = new AtomicLong();
+    private final AtomicLong dbExisting = new AtomicLong();
+    private final AtomicLong dbNew = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        recent = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > recentSize;
+            }
+        };
+        FunctionCounter.builder("comments.dedup.ids", recentHits, AtomicLong::get).tag("result", "recent").register(meterRegistry);
+        FunctionCounter.builder("comments.dedup.ids", claimedHits, AtomicLong::get).tag("result", "claimed").register(meterRegistry);
+        FunctionCounter.builder("comments.dedup.ids", bloomNew, AtomicLong::get).tag("result", "bloom_new").register(meterRegistry);
+        FunctionCounter.builder("comments.dedup.ids", dbExisting, AtomicLong::get).tag("result", "db_existing").register(meterRegistry);
+        FunctionCounter.builder("comments.dedup.ids", dbNew, AtomicLong::get).tag("result", "db_new").register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInBackground() {
+        if (!bloomEnabled) {
+            return;
+        }
+        Thread loader = new Thread(this::loadBloomFilter, "comment-dedup-bloom-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void loadBloomFilter() {
+        long start = System.currentTimeMillis();
+        try {
+            Long stored = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM comments", Long.class);
+            // Leave room to grow before the false positive rate degrades
+            long capacity = Math.max(bloomMinCapacity, (stored != null ? stored : 0) * 2);
+            BloomFilter filter = new BloomFilter(capacity, bloomFalsePositiveRate);
+            bloom = filter;
+
+            AtomicLong loaded = new AtomicLong();
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement("SELECT comment_id FROM comments",
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                // Stream rows instead of buffering every comment_id in the driver
+                statement.setFetchSize(Integer.MIN_VALUE);
+                return statement;
+            }, (ResultSet rs) -> {
+                filter.put(rs.getString(1));
+                loaded.incrementAndGet();
+            });
+
+            bloomReady = true;
+            logger.info("Comment dedup Bloom filter loaded: {} ids, {} KB, in {} ms", loaded.get(),
+                    filter.sizeInBytes() / 1024, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            bloom = null;
+            logger.error("Comment dedup Bloom filter load failed, falling back to database lookups: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the ids (in input order, without duplicates) that may not be stored yet and
+     * claims them for the current transaction. The caller is expected to try inserting
+     * them; ids left out are known to be stored or claimed by another transaction.
+     */
+    public Set<String> claimCandidates(Collection<String> commentIds) {
+        Set<String> fresh = new LinkedHashSet<>();
+        List<String> maybe = new ArrayList<>();
+        BloomFilter filter = bloomReady ? bloom : null;
+
+        for (String commentId : new LinkedHashSet<>(commentIds)) {
+            if (commentId == null) {
+                continue;
+            }
+            if (claimed.contains(commentId)) {
+                claimedHits.incrementAndGet();
+            } else if (isRecent(commentId)) {
+                recentHits.incrementAndGet();
+            } else if (filter != null && !filter.mightContain(commentId)) {
+                bloomNew.incrementAndGet();
+                fresh.add(commentId);
+            } else {
+                maybe.add(commentId);
+            }
+        }
+
+        if (!maybe.isEmpty()) {
+            Set<String> existing = new LinkedHashSet<>();
+            for (int i = 0; i < maybe.size(); i += MAX_IN_LIST) {
+                existing.addAll(commentRepository.findExistingCommentIds(maybe.subList(i, Math.min(maybe.size(), i + MAX_IN_LIST))));
+            }
+            for (String commentId : maybe) {
+                if (existing.contains(commentId)) {
+                    dbExisting.incrementAndGet();
+                    markRecent(commentId);
+                } else {
+                    dbNew.incrementAndGet();
+                    fresh.add(commentId);
+                }
+            }
+        }
+
+        // Another thread may have claimed some of them since the checks above
+        fresh.removeIf(commentId -> !claimed.add(commentId));
+        if (!fresh.isEmpty()) {
+            releaseAfterCompletion(fresh);
+        }
+        return fresh;
+    }
+
+    /**
+     * Records ids as stored once the current transaction commits (immediately if there is
+     * none), so later deliveries of them are settled without a query.
+     */
+    public void recordStored(Collection<String> commentIds) {
+        Set<String> stored = new LinkedHashSet<>(commentIds);
+        stored.remove(null);
+        if (stored.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            markStored(stored);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                markStored(stored);
+            }
+        });
+    }
+
+    private void releaseAfterCompletion(Set<String> commentIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // No surrounding transaction: the caller's save commits on its own
+            release(commentIds, true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                release(commentIds, status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    private void release(Set<String> commentIds, boolean stored) {
+        // Committed ids are stored either way: inserted by the caller or found by its insert
+        if (stored) {
+            markStored(commentIds);
+        }
+        claimed.removeAll(commentIds);
+    }
+
+    private void markStored(Collection<String> commentIds) {
+        BloomFilter filter = bloom;
+        for (String commentId : commentIds) {
+            if (filter != null) {
+                filter.put(commentId);
+            }
+            markRecent(commentId);
+        }
+    }
+
+    private boolean isRecent(String commentId) {
+        synchronized (recent) {
+            return recent.get(commentId) != null;
+        }
+    }
+
+    private void markRecent(String commentId) {
+        synchronized (recent) {
+            recent.put(commentId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Fixed-size Bloom filter over strings, safe for concurrent puts and reads.
+     * Uses double hashing of a 64-bit FNV-1a hash to derive the k bit positions.
+     */
+    static final class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+
+        BloomFilter(long expectedInsertions, double falsePositiveRate) {
+            long m = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (m + 63) / 64));
+            this.bits = new AtomicLongArray(words);
+            this.bitCount = (long) words * 64;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        }
+
+        void put(String value) {
+            long hash = hash(value);
+            long h1 = hash;
+            long h2 = mix(hash);
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current = bits.get(word);
+                while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                    current = bits.get(word);
+                }
+            }
+        }
+
+        boolean mightContain(String value) {
+            long hash = hash(value);
+            long h1 = hash;
+            long h2 = mix(hash);
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long sizeInBytes() {
+            return bitCount / 8;
+        }
+
+        private static long hash(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        // Finalizer from SplitMix64, gives the second, independent-looking hash
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return (z ^ (z >>> 31)) | 1;
+        }
+    }
+}
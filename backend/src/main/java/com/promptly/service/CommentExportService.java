@@ -0,0 +1,282 @@
+package com.promptly.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.promptly.entity.Comment;
+import com.promptly.entity.Reply;
+import com.promptly.repository.CommentRepository;
+import com.promptly.repository.ReplyRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams a brand's comments or replies as CSV or NDJSON.
+ *
+ * Rows come from a forward-only JDBC cursor and are written as they are read, each
+ * entity being detached right after it is written, so memory stays flat no matter
+ * how many rows the brand has. The read-only transaction (and its connection) is held
+ * for the duration of the download.
+ */
+@Service
+public class CommentExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommentExportService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] COMMENT_COLUMNS = {
+            "id", "comment_id", "media_id", "parent_id", "username", "user_id", "text",
+            "like_count", "status", "timestamp", "created_at", "updated_at"
+    };
+
+    private static final String[] REPLY_COLUMNS = {
+            "id", "comment_id", "reply_id", "user_id", "text", "sent_at", "created_at"
+    };
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private ReplyRepository replyRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    public void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    public enum Format {
+        CSV("csv", "text/csv"), NDJSON("ndjson", "application/x-ndjson");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    public enum Dataset {
+        COMMENTS, REPLIES
+    }
+
+    public Format parseFormat(String format) {
+        try {
+            return Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid export format: " + format);
+        }
+    }
+
+    public Dataset parseDataset(String type) {
+        try {
+            return Dataset.valueOf(type.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid export type: " + type);
+        }
+    }
+
+    public String fileName(Dataset dataset, Format format, boolean gzip) {
+        return dataset.name().toLowerCase(Locale.ROOT) + "-export." + format.getExtension() + (gzip ? ".gz" : "");
+    }
+
+    public void export(Integer brandId, Dataset dataset, Format format, boolean gzip, OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(gzip ? gzipStream : out, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        Long rows;
+        try {
+            rows = readOnlyTransaction.execute(status -> {
+                try {
+                    return dataset == Dataset.COMMENTS
+                            ? writeComments(brandId, format, writer)
+                            : writeReplies(brandId, format, writer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Most likely the client closed the connection mid-download
+            throw e.getCause();
+        }
+
+        writer.flush();
+        if (gzipStream != null) {
+            gzipStream.finish();
+        }
+        logger.info("Exported {} {} for brand {} as {} in {}ms", rows, dataset.name().toLowerCase(Locale.ROOT),
+                brandId, format.getExtension(), System.currentTimeMillis() - start);
+    }
+
+    private long writeComments(Integer brandId, Format format, Writer writer) throws IOException {
+        RowWriter rows = format == Format.CSV ? new CsvRowWriter(writer) : new JsonRowWriter(writer);
+        rows.header(COMMENT_COLUMNS);
+        long count = 0;
+        try (Stream<Comment> stream = commentRepository.streamByBrandId(brandId)) {
+            Iterator<Comment> it = stream.iterator();
+            while (it.hasNext()) {
+                Comment c = it.next();
+                rows.row(COMMENT_COLUMNS, c.getId(), c.getCommentId(), c.getMediaId(), c.getParentId(),
+                        c.getUsername(), c.getUserId(), c.getText(), c.getLikeCount(), c.getStatus().name(),
+                        c.getTimestamp(), c.getCreatedAt(), c.getUpdatedAt());
+                entityManager.detach(c);
+                count++;
+            }
+        }
+        rows.finish();
+        return count;
+    }
+
+    private long writeReplies(Integer brandId, Format format, Writer writer) throws IOException {
+        RowWriter rows = format == Format.CSV ? new CsvRowWriter(writer) : new JsonRowWriter(writer);
+        rows.header(REPLY_COLUMNS);
+        long count = 0;
+        try (Stream<Reply> stream = replyRepository.streamByBrandId(brandId)) {
+            Iterator<Reply> it = stream.iterator();
+            while (it.hasNext()) {
+                Reply r = it.next();
+                rows.row(REPLY_COLUMNS, r.getId(), r.getCommentId(), r.getReplyId(), r.getUserId(),
+                        r.getText(), r.getSentAt(), r.getCreatedAt());
+                entityManager.detach(r);
+                count++;
+            }
+        }
+        rows.finish();
+        return count;
+    }
+
+    private interface RowWriter {
+        void header(String[] columns) throws IOException;
+
+        void row(String[] columns, Object... values) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void header(String[] columns) throws IOException {
+            row(columns, (Object[]) columns);
+        }
+
+        @Override
+        public void row(String[] columns, Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                Object value = values[i];
+                if (value instanceof String s) {
+                    writeQuoted(s);
+                } else if (value != null) {
+                    writer.write(value.toString());
+                }
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        // RFC 4180: quote fields containing separators, quotes or line breaks
+        private void writeQuoted(String value) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char ch = value.charAt(i);
+                quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+            }
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    private final class JsonRowWriter implements RowWriter {
+        private final JsonGenerator generator;
+
+        JsonRowWriter(Writer writer) throws IOException {
+            this.generator = jsonFactory.createGenerator(writer);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Rows are newline-delimited below, not space-separated
+            this.generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void header(String[] columns) {
+        }
+
+        @Override
+        public void row(String[] columns, Object... values) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < columns.length; i++) {
+                Object value = values[i];
+                generator.writeFieldName(columns[i]);
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof Integer n) {
+                    generator.writeNumber(n);
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.flush();
+        }
+    }
+}
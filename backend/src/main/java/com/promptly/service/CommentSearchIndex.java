@@ -0,0 +1,537 @@
+package com.promptly.service;
+
+import com.promptly.entity.Comment;
+import com.promptly.event.CommentChangedEvent;
+import com.promptly.repository.CommentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process inverted index over comment text and author usernames, one per brand.
+ *
+ * Each term maps to a postings list of comment ids stored as varint-encoded
+ * deltas, so a posting usually costs one or two bytes. Text words are indexed
+ * as-is, mentions as "@name", and the comment author as "@username", so
+ * "@someone" finds both comments by and comments mentioning that user.
+ *
+ * Results are ranked by the summed IDF of the matched query terms, newest first
+ * on ties. The index is built in the background once the application is ready
+ * and then kept current from committed CommentChangedEvents. Events that arrive
+ * during the build are buffered and merged in after it, one pass per postings
+ * list, so the build's appends stay in order and comments it already read cost
+ * nothing. Until the index is ready, {@link CommentService} refuses searches.
+ *
+ * Events only cover comments stored by this node, so every
+ * search.index.catch-up-interval-ms the index also reads the comments stored since
+ * the highest id it has read, which picks up what other nodes ingested. Ids the scan
+ * skips over may belong to transactions that have not committed yet; they are looked
+ * up again on later passes for search.index.gap-timeout-ms.
+ */
+@Component
+public class CommentSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommentSearchIndex.class);
+
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final int MAX_QUERY_TERMS = 16;
+
+    // Bounds the ids remembered as skipped by the catch-up scan; the oldest go first
+    private static final int MAX_GAPS = 100_000;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Value("${search.index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${search.index.build-batch-size:5000}")
+    private int buildBatchSize;
+
+    @Value("${search.index.gap-timeout-ms:60000}")
+    private long gapTimeoutMs;
+
+    private final Map<Integer, BrandIndex> brands = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    // Comments created while the build runs; guarded by itself, as is the building flag
+    private final List<Comment> pending = new ArrayList<>();
+    private boolean building;
+
+    // Highest comment id read from the database, and ids below it that were missing when
+    // scanned, with when they were first missed; used by the catch-up pass only
+    private int readUpTo;
+    private final LinkedHashMap<Integer, Long> gaps = new LinkedHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildInBackground() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (pending) {
+            building = true;
+        }
+        Thread builder = new Thread(this::build, "comment-search-index-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private void build() {
+        long start = System.currentTimeMillis();
+        long indexed = 0;
+        int afterId = 0;
+        try {
+            while (true) {
+                List<Comment> batch = commentRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, buildBatchSize));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (Comment comment : batch) {
+                    add(comment);
+                }
+                indexed += batch.size();
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+            readUpTo = afterId;
+            int buffered;
+            synchronized (pending) {
+                buffered = pending.size();
+                addBuffered(pending);
+                pending.clear();
+                building = false;
+                ready = true;
+            }
+            logger.info("Comment search index built: {} comments (and {} created meanwhile) in {} ms",
+                    indexed, buffered, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            synchronized (pending) {
+                pending.clear();
+                building = false;
+            }
+            logger.error("Comment search index build failed after {} comments: {}", indexed, e.getMessage(), e);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Indexes comments stored since the last pass, including those written by other
+     * nodes, and those that were still uncommitted when an earlier pass went past them.
+     */
+    @Scheduled(initialDelayString = "${search.index.catch-up-interval-ms:10000}",
+               fixedDelayString = "${search.index.catch-up-interval-ms:10000}")
+    public void catchUp() {
+        if (!ready) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Comment> found = new ArrayList<>();
+
+        gaps.values().removeIf(missedAt -> now - missedAt > gapTimeoutMs);
+        List<Integer> missing = new ArrayList<>(gaps.keySet());
+        for (int i = 0; i < missing.size(); i += buildBatchSize) {
+            for (Comment comment : commentRepository.findAllById(missing.subList(i, Math.min(missing.size(), i + buildBatchSize)))) {
+                gaps.remove(comment.getId());
+                found.add(comment);
+            }
+        }
+
+        while (true) {
+            List<Comment> batch = commentRepository.findByIdGreaterThanOrderByIdAsc(readUpTo, PageRequest.of(0, buildBatchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (Comment comment : batch) {
+                for (int id = Math.max(readUpTo + 1, comment.getId() - MAX_GAPS); id < comment.getId(); id++) {
+                    gaps.put(id, now);
+                }
+                readUpTo = comment.getId();
+            }
+            found.addAll(batch);
+        }
+        if (gaps.size() > MAX_GAPS) {
+            Iterator<Integer> oldest = gaps.keySet().iterator();
+            for (int excess = gaps.size() - MAX_GAPS; excess > 0; excess--) {
+                oldest.next();
+                oldest.remove();
+            }
+        }
+
+        if (!found.isEmpty()) {
+            // Comments this node stored are already indexed from their events; adding
+            // them again changes nothing
+            addBuffered(found);
+            logger.debug("Search index caught up on {} comments, {} ids still missing", found.size(), gaps.size());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCommentChanged(CommentChangedEvent event) {
+        if (!enabled || event.getType() != CommentChangedEvent.Type.CREATED) {
+            return;
+        }
+        synchronized (pending) {
+            if (building) {
+                pending.add(event.getComment());
+                return;
+            }
+        }
+        // Before the build starts the comment is committed, so the build will read it
+        if (ready) {
+            add(event.getComment());
+        }
+    }
+
+    public void add(Comment comment) {
+        if (comment.getId() == null) {
+            return;
+        }
+        brands.computeIfAbsent(comment.getBrandId(), id -> new BrandIndex()).add(comment.getId(), terms(comment));
+    }
+
+    private void addBuffered(List<Comment> comments) {
+        List<Comment> sorted = new ArrayList<>(comments);
+        sorted.removeIf(comment -> comment.getId() == null);
+        sorted.sort(Comparator.comparing(Comment::getId));
+        Map<Integer, Map<String, List<Integer>>> idsByBrandAndTerm = new HashMap<>();
+        for (Comment comment : sorted) {
+            Map<String, List<Integer>> idsByTerm = idsByBrandAndTerm.computeIfAbsent(comment.getBrandId(), id -> new HashMap<>());
+            for (String term : terms(comment)) {
+                idsByTerm.computeIfAbsent(term, t -> new ArrayList<>()).add(comment.getId());
+            }
+        }
+        idsByBrandAndTerm.forEach((brandId, idsByTerm) ->
+                brands.computeIfAbsent(brandId, id -> new BrandIndex()).addAll(idsByTerm));
+    }
+
+    private static Set<String> terms(Comment comment) {
+        Set<String> terms = tokenize(comment.getText());
+        if (comment.getUsername() != null && !comment.getUsername().isEmpty()) {
+            terms.add("@" + comment.getUsername().toLowerCase(Locale.ROOT));
+        }
+        return terms;
+    }
+
+    /**
+     * Returns the ids of the matching comments for one result page, best match first.
+     */
+    public SearchResult search(Integer brandId, String query, int limit, int offset) {
+        BrandIndex index = brands.get(brandId);
+        Set<String> terms = tokenize(query);
+        if (index == null || terms.isEmpty()) {
+            return new SearchResult(List.of(), 0);
+        }
+        return index.search(new ArrayList<>(terms).subList(0, Math.min(terms.size(), MAX_QUERY_TERMS)), limit, offset);
+    }
+
+    /**
+     * Lower-cases and splits on anything that is not a letter, digit, '_' or '.',
+     * keeping a leading '@' so mentions stay distinguishable from plain words.
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int i = 0;
+        while (i < lower.length()) {
+            int start = i;
+            boolean mention = lower.charAt(i) == '@';
+            if (mention) {
+                i++;
+            }
+            int wordStart = i;
+            while (i < lower.length() && isWordChar(lower.charAt(i))) {
+                i++;
+            }
+            // Trailing dots end sentences rather than usernames
+            int end = i;
+            while (end > wordStart && lower.charAt(end - 1) == '.') {
+                end--;
+            }
+            if (end > wordStart && end - start <= MAX_TERM_LENGTH) {
+                terms.add(lower.substring(start, end));
+            }
+            if (i == start) {
+                i++;
+            }
+        }
+        return terms;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+
+    public record SearchResult(List<Integer> commentIds, long total) {
+    }
+
+    private static final class BrandIndex {
+        private final Map<String, PostingList> postings = new HashMap<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private int documents;
+
+        void add(int commentId, Set<String> terms) {
+            lock.writeLock().lock();
+            try {
+                boolean added = false;
+                for (String term : terms) {
+                    added |= postings.computeIfAbsent(term, t -> new PostingList()).add(commentId);
+                }
+                if (added) {
+                    documents++;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Adds many comments at once, given as ascending ids per term.
+         */
+        void addAll(Map<String, List<Integer>> idsByTerm) {
+            lock.writeLock().lock();
+            try {
+                Set<Integer> added = new HashSet<>();
+                idsByTerm.forEach((term, ids) -> postings.computeIfAbsent(term, t -> new PostingList()).addAll(ids, added));
+                documents += added.size();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        SearchResult search(List<String> terms, int limit, int offset) {
+            int[][] lists = new int[terms.size()][];
+            double[] idf = new double[terms.size()];
+            int found = 0;
+
+            lock.readLock().lock();
+            try {
+                for (String term : terms) {
+                    PostingList list = postings.get(term);
+                    if (list != null) {
+                        lists[found] = list.decode();
+                        idf[found] = Math.log(1.0 + (double) documents / list.count);
+                        found++;
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (found == 0) {
+                return new SearchResult(List.of(), 0);
+            }
+
+            if (found == 1) {
+                // All matches score the same, so rank order is simply newest first
+                int[] ids = lists[0];
+                List<Integer> page = new ArrayList<>();
+                for (int i = ids.length - 1 - offset; i >= 0 && page.size() < limit; i--) {
+                    page.add(ids[i]);
+                }
+                return new SearchResult(page, ids.length);
+            }
+
+            // k-way merge from the newest id down; keep the best offset + limit in a min-heap.
+            // Walking newest first means an equal score never displaces an entry already kept.
+            int wanted = offset + limit;
+            PriorityQueue<ScoredDoc> top = new PriorityQueue<>();
+            int[] positions = new int[found];
+            for (int i = 0; i < found; i++) {
+                positions[i] = lists[i].length - 1;
+            }
+            long total = 0;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < found; i++) {
+                    if (positions[i] >= 0 && lists[i][positions[i]] > next) {
+                        next = lists[i][positions[i]];
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                double score = 0;
+                for (int i = 0; i < found; i++) {
+                    if (positions[i] >= 0 && lists[i][positions[i]] == next) {
+                        score += idf[i];
+                        positions[i]--;
+                    }
+                }
+                total++;
+                if (top.size() < wanted) {
+                    top.add(new ScoredDoc(next, score));
+                } else if (wanted > 0 && score > top.peek().score) {
+                    top.poll();
+                    top.add(new ScoredDoc(next, score));
+                }
+            }
+
+            List<ScoredDoc> ranked = new ArrayList<>(top);
+            ranked.sort(Collections.reverseOrder());
+            List<Integer> ids = new ArrayList<>();
+            for (int i = offset; i < ranked.size(); i++) {
+                ids.add(ranked.get(i).commentId);
+            }
+            return new SearchResult(ids, total);
+        }
+    }
+
+    private record ScoredDoc(int commentId, double score) implements Comparable<ScoredDoc> {
+        @Override
+        public int compareTo(ScoredDoc other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Integer.compare(commentId, other.commentId);
+        }
+    }
+
+    /**
+     * Sorted comment ids as varint-encoded gaps. Appends are O(1) since ids
+     * mostly arrive in increasing order; an out-of-order id (a transaction that
+     * committed after a later one) re-encodes the list.
+     */
+    private static final class PostingList {
+        private byte[] bytes = new byte[8];
+        private int length;
+        private int count;
+        private int last;
+
+        boolean add(int commentId) {
+            if (count == 0 || commentId > last) {
+                writeVarint(count == 0 ? commentId : commentId - last);
+                last = commentId;
+                count++;
+                return true;
+            }
+            int[] ids = decode();
+            int at = Arrays.binarySearch(ids, commentId);
+            if (at >= 0) {
+                return false;
+            }
+            int insertAt = -at - 1;
+            int[] merged = new int[ids.length + 1];
+            System.arraycopy(ids, 0, merged, 0, insertAt);
+            merged[insertAt] = commentId;
+            System.arraycopy(ids, insertAt, merged, insertAt + 1, ids.length - insertAt);
+
+            length = 0;
+            count = 0;
+            for (int id : merged) {
+                writeVarint(count == 0 ? id : id - last);
+                last = id;
+                count++;
+            }
+            return true;
+        }
+
+        /**
+         * Adds ascending ids in a single pass, re-encoding at most once, and collects
+         * the ids that were not in the list yet.
+         */
+        void addAll(List<Integer> sortedIds, Set<Integer> added) {
+            if (sortedIds.isEmpty()) {
+                return;
+            }
+            if (count == 0 || sortedIds.get(0) > last) {
+                for (int id : sortedIds) {
+                    if (count == 0 || id > last) {
+                        writeVarint(count == 0 ? id : id - last);
+                        last = id;
+                        count++;
+                        added.add(id);
+                    }
+                }
+                return;
+            }
+            int[] ids = decode();
+            int[] merged = new int[ids.length + sortedIds.size()];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < ids.length || j < sortedIds.size()) {
+                int next;
+                if (j == sortedIds.size() || (i < ids.length && ids[i] <= sortedIds.get(j))) {
+                    next = ids[i++];
+                } else {
+                    next = sortedIds.get(j++);
+                    if (size > 0 && merged[size - 1] == next) {
+                        continue;
+                    }
+                    if (i < ids.length && ids[i] == next) {
+                        continue;
+                    }
+                    added.add(next);
+                }
+                if (size == 0 || merged[size - 1] != next) {
+                    merged[size++] = next;
+                }
+            }
+            length = 0;
+            count = 0;
+            for (int k = 0; k < size; k++) {
+                writeVarint(count == 0 ? merged[k] : merged[k] - last);
+                last = merged[k];
+                count++;
+            }
+        }
+
+        int[] decode() {
+            int[] ids = new int[count];
+            int position = 0;
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                value += gap;
+                ids[i] = value;
+            }
+            return ids;
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+    }
+}
@@ -1,31 +1,81 @@
 package com.promptly.service;
 
+import com.promptly.dto.CommentCursor;
 import com.promptly.dto.CommentDto;
+import com.promptly.dto.CommentPage;
+import com.promptly.dto.CommentSearchResult;
 import com.promptly.dto.ReplyDto;
 import com.promptly.dto.ReplyRequest;
 import com.promptly.entity.Comment;
 import com.promptly.entity.InstagramAccount;
+import com.promptly.entity.MediaSyncWatermark;
 import com.promptly.entity.Reply;
-import com.promptly.entity.User;
+import com.promptly.entity.SyncJob;
+import com.promptly.entity.SyncJobCheckpoint;
+import com.promptly.event.CommentChangedEvent;
 import com.promptly.repository.CommentRepository;
 import com.promptly.repository.InstagramAccountRepository;
+import com.promptly.repository.MediaSyncWatermarkRepository;
+import com.promptly.repository.OffsetPageRequest;
 import com.promptly.repository.ReplyRepository;
-import com.promptly.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
 public class CommentService {
 
+    private static final Logger logger = LoggerFactory.getLogger(CommentService.class);
+
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private static final int GRAPH_PAGE_LIMIT = 50;
+
+    private static final Duration GRAPH_BATCH_RETRY_DELAY = Duration.ofSeconds(1);
+
+    @Value("${instagram.sync.media-concurrency:8}")
+    private int mediaConcurrency;
+
+    @Value("${instagram.sync.graph-batch-size:50}")
+    private int graphBatchSize;
+
+    @Value("${instagram.sync.graph-batch-max-retries:3}")
+    private int graphBatchMaxRetries;
+
+    @Value("${instagram.sync.media-lookback-days:30}")
+    private int mediaLookbackDays;
+
+    @Value("${instagram.sync.comment-lookback-minutes:10}")
+    private int commentLookbackMinutes;
+
     @Autowired
     private CommentRepository commentRepository;
 
@@ -36,51 +86,181 @@ public class CommentService {
     private InstagramAccountRepository instagramAccountRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private InstagramAccountDirectory accountDirectory;
 
     @Autowired
-    private WebClient.Builder webClientBuilder;
+    private MediaSyncWatermarkRepository mediaSyncWatermarkRepository;
 
-    public List<CommentDto> getComments(Integer brandId, String status, int limit, int offset) {
-        List<Comment> comments;
+    @Autowired
+    private CommentCounterService commentCounterService;
 
-        if (status != null && (status.equals("OPEN") || status.equals("REPLIED") || status.equals("HIDDEN"))) {
-            Comment.CommentStatus commentStatus = Comment.CommentStatus.valueOf(status);
-            comments = commentRepository.findByBrandIdAndStatus(brandId, commentStatus);
+    @Autowired
+    private CommentDeduplicator commentDeduplicator;
+
+    @Autowired
+    private CommentBatchWriter commentBatchWriter;
+
+    @Autowired
+    private InboxCache inboxCache;
+
+    @Autowired
+    private CommentSearchIndex commentSearchIndex;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private GraphApiClient graphApiClient;
+
+    @Autowired
+    private SyncJobService syncJobService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Short transactions for sync writes, which run outside any transaction of the caller
+    private TransactionTemplate writeTransaction;
+
+    @PostConstruct
+    public void init() {
+        writeTransaction = new TransactionTemplate(transactionManager);
+        writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Returns one inbox page. With a cursor (or no offset) this is a keyset
+     * seek on (timestamp, id) that reads at most limit + 1 rows, so deep pages
+     * cost the same as the first. A non-zero offset without a cursor is the
+     * legacy compatibility mode.
+     */
+    public CommentPage getComments(Integer brandId, String status, int limit, String cursor, int offset) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Comment.CommentStatus commentStatus = parseStatus(status);
+        boolean offsetMode = cursor == null && offset > 0;
+        CommentCursor after = cursor != null ? CommentCursor.decode(cursor) : null;
+
+        int pageIndex;
+        if (offsetMode) {
+            pageIndex = offset % pageSize == 0 ? offset / pageSize : -1;
+        } else {
+            pageIndex = after != null ? after.getPage() : 0;
+        }
+
+        InboxCache.Key cacheKey = null;
+        if (inboxCache.isCacheable(pageIndex)) {
+            String slot = "page:" + pageSize + ":" + (offsetMode ? "offset:" + offset : cursor);
+            cacheKey = inboxCache.key(brandId, String.valueOf(commentStatus), slot);
+            CommentPage cached = inboxCache.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        List<CommentDto> comments;
+        boolean hasMore;
+        if (offsetMode) {
+            comments = findByOffset(brandId, commentStatus, pageSize, offset);
+            hasMore = comments.size() == pageSize;
         } else {
-            comments = commentRepository.findByBrandIdOrderByTimestampDesc(brandId);
+            // Read one row past the page to know whether a next page exists
+            comments = findByCursor(brandId, commentStatus, pageSize + 1, after);
+            hasMore = comments.size() > pageSize;
+            if (hasMore) {
+                comments = comments.subList(0, pageSize);
+            }
         }
 
-        // Apply pagination
-        if (offset >= comments.size()) {
-            return List.of();
+        String nextCursor = null;
+        if (hasMore && !comments.isEmpty()) {
+            CommentDto last = comments.get(comments.size() - 1);
+            int nextPage = pageIndex >= 0 ? pageIndex + 1 : -1;
+            nextCursor = new CommentCursor(last.getTimestamp(), last.getId(), nextPage).encode();
         }
-        
-        int start = offset;
-        int end = Math.min(start + limit, comments.size());
-        comments = comments.subList(start, end);
 
-        return comments.stream().map(this::toDto).collect(Collectors.toList());
+        CommentPage page = new CommentPage(List.copyOf(comments), nextCursor, pageSize);
+        if (cacheKey != null) {
+            inboxCache.put(cacheKey, page);
+        }
+        return page;
     }
-    
-    public long getCommentsCount(Integer brandId, String status) {
+
+    private List<CommentDto> findByCursor(Integer brandId, Comment.CommentStatus status, int size, CommentCursor after) {
+        Pageable pageable = PageRequest.of(0, size);
+        if (status != null) {
+            return after == null
+                    ? commentRepository.findPageByBrandIdAndStatus(brandId, status, pageable)
+                    : commentRepository.findPageByBrandIdAndStatusBefore(brandId, status, after.getTimestamp(), after.getId(), pageable);
+        }
+        return after == null
+                ? commentRepository.findPageByBrandId(brandId, pageable)
+                : commentRepository.findPageByBrandIdBefore(brandId, after.getTimestamp(), after.getId(), pageable);
+    }
+
+    private List<CommentDto> findByOffset(Integer brandId, Comment.CommentStatus status, int pageSize, int offset) {
+        // Compatibility mode: LIMIT offset, pageSize in MySQL, whether or not the offset is page-aligned
+        Pageable pageable = OffsetPageRequest.of(offset, pageSize);
+        return status != null
+                ? commentRepository.findPageByBrandIdAndStatus(brandId, status, pageable)
+                : commentRepository.findPageByBrandId(brandId, pageable);
+    }
+
+    private Comment.CommentStatus parseStatus(String status) {
         if (status != null && (status.equals("OPEN") || status.equals("REPLIED") || status.equals("HIDDEN"))) {
-            Comment.CommentStatus commentStatus = Comment.CommentStatus.valueOf(status);
-            return commentRepository.countByBrandIdAndStatus(brandId, commentStatus);
-        } else {
-            return commentRepository.countByBrandId(brandId);
+            return Comment.CommentStatus.valueOf(status);
         }
+        return null;
+    }
+
+    public long getCommentsCount(Integer brandId, String status) {
+        Comment.CommentStatus commentStatus = parseStatus(status);
+        InboxCache.Key cacheKey = inboxCache.key(brandId, String.valueOf(commentStatus), "count");
+        Long cached = inboxCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        long count = commentCounterService.getCount(brandId, commentStatus);
+        inboxCache.put(cacheKey, count);
+        return count;
+    }
+
+    /**
+     * Keyword / @username search over the brand's comments via the in-memory index,
+     * returning the requested page in rank order and the total number of matches.
+     * Answers 503 while the index is not ready (still building, failed, or disabled)
+     * rather than scanning the brand's comments in SQL.
+     */
+    public CommentSearchResult searchComments(Integer brandId, String query, int limit, int offset) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        if (!commentSearchIndex.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Search index is not ready");
+        }
+        CommentSearchIndex.SearchResult result = commentSearchIndex.search(brandId, query, pageSize, Math.max(0, offset));
+        if (result.commentIds().isEmpty()) {
+            return new CommentSearchResult(List.of(), result.total(), pageSize);
+        }
+
+        Map<Integer, CommentDto> byId = new HashMap<>();
+        for (CommentDto dto : commentRepository.findDtosByBrandIdAndIdIn(brandId, result.commentIds())) {
+            byId.put(dto.getId(), dto);
+        }
+        List<CommentDto> comments = result.commentIds().stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return new CommentSearchResult(comments, result.total(), pageSize);
     }
 
     public CommentDto getComment(Integer commentId, Integer brandId) {
-        Comment comment = commentRepository.findByIdAndBrandId(commentId, brandId)
+        return commentRepository.findDtoByIdAndBrandId(commentId, brandId)
                 .orElseThrow(() -> new RuntimeException("Comment not found"));
-        return toDto(comment);
     }
 
-    public List<ReplyDto> getReplies(Integer commentId) {
-        List<Reply> replies = replyRepository.findByCommentIdOrderBySentAtDesc(commentId);
-        return replies.stream().map(this::toReplyDto).collect(Collectors.toList());
+    /**
+     * Loads a reply thread and its authors' display names in a single query, however
+     * long the thread. Names are read with the replies, so an edited name shows at once.
+     */
+    public List<ReplyDto> getReplies(Integer commentId, Integer brandId) {
+        return replyRepository.findDtosByCommentIdAndBrandId(commentId, brandId);
     }
 
     @Transactional
@@ -88,7 +268,7 @@ public class CommentService {
         Comment comment = commentRepository.findByIdAndBrandId(commentId, brandId)
                 .orElseThrow(() -> new RuntimeException("Comment not found"));
 
-        InstagramAccount account = instagramAccountRepository.findById(comment.getInstagramAccountId())
+        InstagramAccount account = accountDirectory.findById(comment.getInstagramAccountId())
                 .orElseThrow(() -> new RuntimeException("Instagram account not found"));
 
         // Send reply via Instagram Graph API
@@ -104,192 +284,417 @@ public class CommentService {
         replyRepository.save(reply);
 
         // Update comment status
+        Comment.CommentStatus previousStatus = comment.getStatus();
         comment.setStatus(Comment.CommentStatus.REPLIED);
         commentRepository.save(comment);
+        commentCounterService.recordTransition(brandId, previousStatus, Comment.CommentStatus.REPLIED);
+        eventPublisher.publishEvent(new CommentChangedEvent(brandId, CommentChangedEvent.Type.STATUS_CHANGED, comment));
 
         return replyId;
     }
 
     private String sendReplyToInstagram(String commentId, String text, String accessToken) {
-        WebClient webClient = webClientBuilder.baseUrl("https://graph.facebook.com/v18.0").build();
-
-        Map<String, String> body = new HashMap<>();
-        body.put("message", text);
-
-        @SuppressWarnings("unchecked")
-        Map<String, Object> response = webClient.post()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/{commentId}/replies")
-                        .queryParam("access_token", accessToken)
-                        .build(commentId))
-                .bodyValue(body)
-                .header("Content-Type", "application/json")
-                .retrieve()
-                .bodyToMono(Map.class)
-                .block();
-
-        if (response != null && response.containsKey("id")) {
-            return (String) response.get("id");
-        }
-        
-        throw new RuntimeException("Failed to send reply to Instagram");
+        return graphApiClient.replyToComment(commentId, text, accessToken).block();
     }
 
-    @Transactional
-    public int syncComments(Integer brandId) {
-        InstagramAccount account = instagramAccountRepository.findByBrandIdAndIsConnected(brandId, true)
+    /**
+     * Runs a sync job: pulls new comments for the account's media from the Graph API.
+     *
+     * The sync is incremental. Media pages are followed (newest first) until they are
+     * older than the last successful sync minus instagram.sync.media-lookback-days; a
+     * media item is only read when its comments_count differs from its watermark, and
+     * its comment pages are followed only until they cross that watermark. The first
+     * sync of an account reads everything. Comments are read with Graph API batch calls
+     * covering up to instagram.sync.graph-batch-size media each, with up to
+     * instagram.sync.media-concurrency batches in flight on the WebClient's event loop
+     * while this thread persists the pages as they arrive.
+     *
+     * The sync runs outside any transaction, so no connection is held across Graph API
+     * calls. The media to read are recorded as the job's checkpoints up front; each page
+     * of comments then commits in its own short transaction together with its media's
+     * checkpoint (the next page to read, or DONE after the last page) and the job's
+     * counters. Progress can be polled while the sync runs, and a job interrupted by a
+     * restart (or by GraphRateLimiter.RateLimitedException, which is rethrown) keeps
+     * the pages already committed and resumes from the next page of each pending media.
+     */
+    public int syncComments(SyncJob job) {
+        InstagramAccount account = accountDirectory.findById(job.getInstagramAccountId())
+                .filter(InstagramAccount::getIsConnected)
                 .orElseThrow(() -> new RuntimeException("No Instagram account connected"));
 
-        int commentsAdded = 0;
-        WebClient webClient = webClientBuilder.baseUrl("https://graph.facebook.com/v18.0").build();
-
-        try {
-            // Get media (posts) for the Instagram account
-            @SuppressWarnings("unchecked")
-            Map<String, Object> mediaResponse = webClient.get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/{accountId}/media")
-                            .queryParam("access_token", account.getPageAccessToken())
-                            .queryParam("fields", "id")
-                            .build(account.getInstagramBusinessAccountId()))
-                    .retrieve()
-                    .bodyToMono(Map.class)
-                    .block();
+        LocalDateTime syncStartedAt = job.getStartedAt();
+        Map<String, MediaSyncWatermark> watermarks = new HashMap<>();
+        for (MediaSyncWatermark watermark : mediaSyncWatermarkRepository.findByInstagramAccountId(account.getId())) {
+            watermarks.put(watermark.getMediaId(), watermark);
+        }
 
-            if (mediaResponse != null && mediaResponse.containsKey("data")) {
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> mediaList = (List<Map<String, Object>>) mediaResponse.get("data");
+        List<GraphMedia> toRead = planMedia(job, account, watermarks);
+        // The fetch side runs on Reactor threads while this thread updates the watermarks,
+        // so it gets its own immutable copy of the times it needs
+        Map<String, LocalDateTime> lastCommentAt = new HashMap<>();
+        for (MediaSyncWatermark watermark : watermarks.values()) {
+            if (watermark.getLastCommentAt() != null) {
+                lastCommentAt.put(watermark.getMediaId(), watermark.getLastCommentAt());
+            }
+        }
+        Map<String, LocalDateTime> fetchLastCommentAt = Map.copyOf(lastCommentAt);
+        Set<String> failedMediaIds = ConcurrentHashMap.newKeySet();
+        Flux<MediaPage> pages = Flux.fromIterable(toRead)
+                .buffer(Math.min(graphBatchSize, GraphApiClient.MAX_BATCH_SIZE))
+                .flatMap(group -> fetchCommentsForMedia(group, fetchLastCommentAt, account, failedMediaIds), mediaConcurrency);
 
-                // Fetch comments for each media
-                for (Map<String, Object> media : mediaList) {
-                    String mediaId = (String) media.get("id");
-                    commentsAdded += fetchCommentsForMedia(mediaId, account);
-                }
+        int commentsAdded = 0;
+        int mediaFailed = job.getMediaFailed();
+        try {
+            // Blocking iteration keeps persistence on this thread
+            for (MediaPage page : pages.toIterable()) {
+                commentsAdded += persistPage(job, page, account, watermarks, syncStartedAt);
+                mediaFailed += recordFailures(job, failedMediaIds);
             }
-        } catch (Exception e) {
-            // Log error but don't fail the entire sync
-            System.err.println("Error syncing comments: " + e.getMessage());
+        } catch (SyncJobService.LeaseLostException e) {
+            // The node that took the job over resumes it; there is nothing to record here
+            throw e;
+        } catch (RuntimeException e) {
+            // Pages already committed stay; the job resumes from the media still pending
+            recordFailures(job, failedMediaIds);
+            logger.warn("Comment sync for brand {} stopped after {} comments: {}", account.getBrandId(), commentsAdded, e.getMessage());
+            throw e;
         }
+        mediaFailed += recordFailures(job, failedMediaIds);
 
-        // Update last sync time
-        account.setLastSyncAt(LocalDateTime.now());
-        instagramAccountRepository.save(account);
+        if (mediaFailed > 0) {
+            // Leave lastSyncAt alone so the next sync covers the gap
+            logger.warn("Comment sync for brand {} skipped {} media after errors; last sync time not advanced",
+                    account.getBrandId(), mediaFailed);
+        } else {
+            writeTransaction.executeWithoutResult(status ->
+                    instagramAccountRepository.updateLastSyncAt(account.getId(), syncStartedAt));
+            accountDirectory.refresh(account.getId());
+        }
 
         return commentsAdded;
     }
 
-    @SuppressWarnings("unchecked")
-    private int fetchCommentsForMedia(String mediaId, InstagramAccount account) {
-        int commentsAdded = 0;
-        WebClient webClient = webClientBuilder.baseUrl("https://graph.facebook.com/v18.0").build();
-
-        try {
-            Map<String, Object> commentsResponse = webClient.get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/{mediaId}/comments")
-                            .queryParam("access_token", account.getPageAccessToken())
-                            .queryParam("fields", "id,text,username,like_count,timestamp,from")
-                            .build(mediaId))
-                    .retrieve()
-                    .bodyToMono(Map.class)
+    /**
+     * Returns the media the job still has to read. A new job lists the account's media
+     * and records those that need reading as its checkpoints; a resumed job continues
+     * with its pending checkpoints, from the next page each one recorded.
+     */
+    private List<GraphMedia> planMedia(SyncJob job, InstagramAccount account, Map<String, MediaSyncWatermark> watermarks) {
+        if (!syncJobService.hasPlan(job.getId())) {
+            LocalDateTime mediaCutoff = account.getLastSyncAt() != null
+                    ? account.getLastSyncAt().minusDays(mediaLookbackDays)
+                    : null;
+            List<GraphMedia> media = fetchMedia(account, mediaCutoff)
+                    .filter(item -> needsSync(item, watermarks.get(item.id())))
+                    .collectList()
                     .block();
+            List<SyncJobCheckpoint> checkpoints = media.stream()
+                    .map(item -> new SyncJobCheckpoint(job.getId(), item.id(), item.commentsCount(), null,
+                            SyncJobCheckpoint.Status.PENDING, null))
+                    .toList();
+            if (syncJobService.recordPlan(job.getId(), checkpoints)) {
+                return media;
+            }
+        }
+        return syncJobService.findPendingCheckpoints(job.getId()).stream()
+                .map(checkpoint -> new GraphMedia(checkpoint.getMediaId(), checkpoint.getCommentsCount(), checkpoint.getNextPage()))
+                .toList();
+    }
 
-            if (commentsResponse != null && commentsResponse.containsKey("data")) {
-                List<Map<String, Object>> comments = (List<Map<String, Object>>) commentsResponse.get("data");
+    /**
+     * Stores one page of a media item's comments, its checkpoint and the job's comment
+     * count in one short transaction of its own.
+     */
+    private int persistPage(SyncJob job, MediaPage page, InstagramAccount account,
+                            Map<String, MediaSyncWatermark> watermarks, LocalDateTime syncedAt) {
+        String mediaId = page.media().id();
+        String nextPage = page.next() != null ? graphApiClient.pageRequest(page.next()) : null;
+        return writeTransaction.execute(status -> {
+            int inserted = saveFetchedComments(page, account, watermarks, syncedAt);
+            if (nextPage != null) {
+                syncJobService.recordPage(job.getId(), mediaId, nextPage, inserted);
+            } else {
+                syncJobService.recordProgress(job.getId(), List.of(mediaId), List.of(), inserted);
+            }
+            return inserted;
+        });
+    }
 
-                for (Map<String, Object> commentData : comments) {
-                    String commentId = (String) commentData.get("id");
-                    
-                    // Check if comment already exists
-                    if (commentRepository.findByCommentId(commentId).isPresent()) {
-                        continue;
-                    }
+    /**
+     * Marks the media that failed since the last call as FAILED, returning how many.
+     */
+    private int recordFailures(SyncJob job, Set<String> failedMediaIds) {
+        List<String> failed = new ArrayList<>(failedMediaIds);
+        if (failed.isEmpty()) {
+            return 0;
+        }
+        failedMediaIds.removeAll(failed);
+        writeTransaction.executeWithoutResult(status ->
+                syncJobService.recordProgress(job.getId(), List.of(), failed, 0));
+        return failed.size();
+    }
+
+    private Flux<GraphMedia> fetchMedia(InstagramAccount account, LocalDateTime cutoff) {
+        return fetchPages(
+                graphApiClient.listMedia(account.getInstagramBusinessAccountId(), account.getPageAccessToken(), GRAPH_PAGE_LIMIT),
+                data -> isBefore(parseGraphTimestamp((String) data.get("timestamp")), cutoff))
+                .map(data -> new GraphMedia(
+                        (String) data.get("id"),
+                        data.get("comments_count") instanceof Number n ? n.intValue() : null,
+                        null));
+    }
 
-                    Comment comment = new Comment();
-                    comment.setBrandId(account.getBrandId());
-                    comment.setInstagramAccountId(account.getId());
-                    comment.setCommentId(commentId);
-                    comment.setMediaId(mediaId);
-                    comment.setText((String) commentData.get("text"));
-                    comment.setLikeCount(((Number) commentData.getOrDefault("like_count", 0)).intValue());
-
-                    // Parse from field
-                    Map<String, Object> from = (Map<String, Object>) commentData.get("from");
-                    if (from != null) {
-                        comment.setUsername((String) from.get("username"));
-                        comment.setUserId((String) from.get("id"));
+    /**
+     * Reads the comments of a group of media with batch calls, emitting each page as it
+     * arrives. Each round requests the next page of every media item still being read,
+     * so the group costs one round trip per page depth rather than one per page. Failed
+     * sub-requests are retried on their own, up to instagram.sync.graph-batch-max-retries
+     * times; media that still fail are skipped and added to failedMediaIds.
+     */
+    private Flux<MediaPage> fetchCommentsForMedia(List<GraphMedia> group, Map<String, LocalDateTime> lastCommentAt,
+                                                  InstagramAccount account, Set<String> failedMediaIds) {
+        List<MediaFetch> fetches = new ArrayList<>(group.size());
+        for (GraphMedia media : group) {
+            LocalDateTime watermarkAt = lastCommentAt.get(media.id());
+            // Re-read a little before the watermark in case comments arrive slightly out of order
+            LocalDateTime stopBefore = watermarkAt != null
+                    ? watermarkAt.minusMinutes(commentLookbackMinutes)
+                    : null;
+            String firstRequest = media.resumeFrom() != null
+                    ? media.resumeFrom()
+                    : graphApiClient.commentsRequest(media.id(), GRAPH_PAGE_LIMIT);
+            fetches.add(new MediaFetch(media, firstRequest,
+                    data -> isBefore(parseGraphTimestamp((String) data.get("timestamp")), stopBefore)));
+        }
+        return fetchRound(fetches, account.getPageAccessToken())
+                .concatWith(Flux.defer(() -> {
+                    for (MediaFetch fetch : fetches) {
+                        if (fetch.error != null) {
+                            // One failing post shouldn't abort the others
+                            failedMediaIds.add(fetch.media.id());
+                            logger.warn("Error fetching comments for media {}: {}", fetch.media.id(), fetch.error);
+                        }
+                    }
+                    return Flux.empty();
+                }))
+                .onErrorResume(e -> {
+                    if (e instanceof GraphRateLimiter.RateLimitedException) {
+                        // Every other request would be deferred too
+                        return Flux.error(e);
                     }
+                    List<MediaFetch> unfinished = fetches.stream().filter(fetch -> fetch.request != null).toList();
+                    unfinished.forEach(fetch -> failedMediaIds.add(fetch.media.id()));
+                    logger.warn("Error fetching comments for {} media: {}", unfinished.size(), e.getMessage());
+                    return Flux.empty();
+                });
+    }
 
-                    // Parse timestamp - Instagram API returns ISO 8601 format
-                    String timestampStr = (String) commentData.get("timestamp");
-                    if (timestampStr != null) {
-                        try {
-                            // Remove timezone info and parse as LocalDateTime
-                            // Format: "2024-01-15T10:30:00+0000" -> "2024-01-15T10:30:00"
-                            String cleanTimestamp = timestampStr.replaceAll("[+-]\\d{4}$", "").replace("Z", "");
-                            if (cleanTimestamp.contains("T")) {
-                                comment.setTimestamp(LocalDateTime.parse(cleanTimestamp));
-                            } else {
-                                // Fallback: try parsing as-is
-                                comment.setTimestamp(LocalDateTime.parse(cleanTimestamp));
-                            }
-                        } catch (DateTimeParseException e) {
-                            // Fallback to current time if parsing fails
-                            comment.setTimestamp(LocalDateTime.now());
+    private Flux<MediaPage> fetchRound(List<MediaFetch> fetches, String accessToken) {
+        List<MediaFetch> pending = fetches.stream().filter(fetch -> fetch.request != null).toList();
+        if (pending.isEmpty()) {
+            return Flux.empty();
+        }
+        Mono<List<GraphApiClient.BatchResult>> batch = graphApiClient.batchGet(accessToken,
+                pending.stream().map(fetch -> fetch.request).toList());
+        boolean retrying = pending.stream().anyMatch(fetch -> fetch.attempts > 0);
+        return (retrying ? Mono.delay(GRAPH_BATCH_RETRY_DELAY).then(batch) : batch)
+                .flatMapMany(results -> {
+                    List<MediaPage> pages = new ArrayList<>(pending.size());
+                    for (int i = 0; i < pending.size(); i++) {
+                        MediaPage page = pending.get(i).accept(results.get(i), graphBatchMaxRetries);
+                        if (page != null) {
+                            pages.add(page);
                         }
-                    } else {
-                        comment.setTimestamp(LocalDateTime.now());
                     }
+                    return Flux.fromIterable(pages).concatWith(Flux.defer(() -> fetchRound(fetches, accessToken)));
+                });
+    }
 
-                    comment.setStatus(Comment.CommentStatus.OPEN);
-                    commentRepository.save(comment);
-                    commentsAdded++;
-                }
+    /**
+     * Reads a Graph API edge, following paging.next until there are no more pages or a
+     * page contains an item past the watermark. Items past the watermark are dropped.
+     */
+    private Flux<Map<String, Object>> fetchPages(Mono<GraphApiClient.Page> firstPage,
+                                                 Predicate<Map<String, Object>> pastWatermark) {
+        return firstPage
+                .expand(page -> {
+                    if (page.next() == null || page.data().isEmpty() || page.data().stream().anyMatch(pastWatermark)) {
+                        return Mono.empty();
+                    }
+                    return graphApiClient.nextPage(page.next());
+                })
+                .concatMapIterable(GraphApiClient.Page::data)
+                .filter(pastWatermark.negate());
+    }
+
+    private boolean needsSync(GraphMedia media, MediaSyncWatermark watermark) {
+        if (media.commentsCount() == null) {
+            return true;
+        }
+        if (watermark == null) {
+            return media.commentsCount() > 0;
+        }
+        return !media.commentsCount().equals(watermark.getCommentsCount());
+    }
+
+    private boolean isBefore(LocalDateTime timestamp, LocalDateTime watermark) {
+        return watermark != null && timestamp != null && timestamp.isBefore(watermark);
+    }
+
+    /**
+     * Upserts one page of a media item's comments in one JDBC batch. Only comments the
+     * insert actually wrote count as inserted and produce events; stored comments whose
+     * like count or text changed invalidate the brand's cached inbox pages. The media's
+     * watermark is saved with its last page only, so a media item left half-read never
+     * looks synced.
+     */
+    @SuppressWarnings("unchecked")
+    private int saveFetchedComments(MediaPage page, InstagramAccount account,
+                                    Map<String, MediaSyncWatermark> watermarks, LocalDateTime syncedAt) {
+        String mediaId = page.media().id();
+        List<String> commentIds = page.comments().stream()
+                .map(data -> (String) data.get("id"))
+                .toList();
+        // Every comment is written anyway, so there is nothing to pre-filter; the
+        // deduplicator only learns them for the webhook path
+        commentDeduplicator.recordStored(commentIds);
+
+        List<Comment> toWrite = new ArrayList<>();
+        Set<String> written = new HashSet<>();
+        LocalDateTime newest = null;
+        for (Map<String, Object> commentData : page.comments()) {
+            LocalDateTime timestamp = parseGraphTimestamp((String) commentData.get("timestamp"));
+            if (timestamp != null && (newest == null || timestamp.isAfter(newest))) {
+                newest = timestamp;
+            }
+
+            // Existing comments are written too so their like_count and text stay current
+            String commentId = (String) commentData.get("id");
+            if (commentId == null || !written.add(commentId)) {
+                continue;
             }
-        } catch (Exception e) {
-            System.err.println("Error fetching comments for media " + mediaId + ": " + e.getMessage());
+
+            Comment comment = new Comment();
+            comment.setBrandId(account.getBrandId());
+            comment.setInstagramAccountId(account.getId());
+            comment.setCommentId(commentId);
+            comment.setMediaId(mediaId);
+            comment.setText((String) commentData.get("text"));
+            comment.setLikeCount(((Number) commentData.getOrDefault("like_count", 0)).intValue());
+
+            // Parse from field
+            Map<String, Object> from = (Map<String, Object>) commentData.get("from");
+            if (from != null) {
+                comment.setUsername((String) from.get("username"));
+                comment.setUserId((String) from.get("id"));
+            }
+
+            comment.setTimestamp(timestamp != null ? timestamp : LocalDateTime.now());
+            comment.setStatus(Comment.CommentStatus.OPEN);
+            toWrite.add(comment);
         }
 
-        return commentsAdded;
+        // Pages come newest first: the watermark's time is advanced in memory with every
+        // page and only stored once the media has been read to the end
+        MediaSyncWatermark watermark = watermarks.computeIfAbsent(mediaId,
+                id -> new MediaSyncWatermark(account.getId(), id, null, 0, null));
+        if (newest != null && (watermark.getLastCommentAt() == null || newest.isAfter(watermark.getLastCommentAt()))) {
+            watermark.setLastCommentAt(newest);
+        }
+
+        CommentBatchWriter.UpsertResult result = toWrite.isEmpty()
+                ? new CommentBatchWriter.UpsertResult(List.of(), 0)
+                : commentBatchWriter.upsert(toWrite);
+        List<Comment> inserted = result.inserted();
+        if (result.refreshed() > 0) {
+            // Refreshed like counts and text publish no events, but cached pages show them
+            inboxCache.invalidateAfterCommit(account.getBrandId());
+        }
+        commentCounterService.recordInsert(account.getBrandId(), Comment.CommentStatus.OPEN, inserted.size());
+        for (Comment comment : inserted) {
+            eventPublisher.publishEvent(new CommentChangedEvent(account.getBrandId(), CommentChangedEvent.Type.CREATED, comment));
+        }
+        if (page.next() == null) {
+            if (page.media().commentsCount() != null) {
+                watermark.setCommentsCount(page.media().commentsCount());
+            }
+            watermark.setSyncedAt(syncedAt);
+            mediaSyncWatermarkRepository.save(watermark);
+        }
+        return inserted.size();
     }
 
-    private CommentDto toDto(Comment comment) {
-        CommentDto dto = new CommentDto();
-        dto.setId(comment.getId());
-        dto.setCommentId(comment.getCommentId());
-        dto.setMediaId(comment.getMediaId());
-        dto.setParentId(comment.getParentId());
-        dto.setText(comment.getText());
-        dto.setUsername(comment.getUsername());
-        dto.setUserId(comment.getUserId());
-        dto.setTimestamp(comment.getTimestamp());
-        dto.setLikeCount(comment.getLikeCount());
-        dto.setStatus(comment.getStatus().name());
-        dto.setCreatedAt(comment.getCreatedAt());
-        dto.setUpdatedAt(comment.getUpdatedAt());
-
-        // Load account username if needed
-        InstagramAccount account = instagramAccountRepository.findById(comment.getInstagramAccountId()).orElse(null);
-        if (account != null) {
-            dto.setAccountUsername(account.getUsername());
+    /**
+     * Graph API timestamps look like "2024-01-15T10:30:00+0000"; the offset is dropped.
+     * Returns null when missing or unparseable.
+     */
+    private LocalDateTime parseGraphTimestamp(String timestampStr) {
+        if (timestampStr == null) {
+            return null;
+        }
+        try {
+            String cleanTimestamp = timestampStr.replaceAll("[+-]\\d{4}$", "").replace("Z", "");
+            return LocalDateTime.parse(cleanTimestamp);
+        } catch (DateTimeParseException e) {
+            return null;
         }
+    }
 
-        return dto;
+    /**
+     * A media item to read; resumeFrom is the page a resumed job continues from.
+     */
+    private record GraphMedia(String id, Integer commentsCount, String resumeFrom) {
     }
 
-    private ReplyDto toReplyDto(Reply reply) {
-        ReplyDto dto = new ReplyDto();
-        dto.setId(reply.getId());
-        dto.setReplyId(reply.getReplyId());
-        dto.setText(reply.getText());
-        dto.setSentAt(reply.getSentAt());
+    /**
+     * One page of a media item's comments; next is null on the media's last page.
+     */
+    private record MediaPage(GraphMedia media, List<Map<String, Object>> comments, String next) {
+    }
 
-        User user = userRepository.findById(reply.getUserId()).orElse(null);
-        if (user != null) {
-            dto.setRepliedBy(user.getFullName());
+    /**
+     * Progress of reading one media item's comments through batch calls.
+     */
+    private static final class MediaFetch {
+        private final GraphMedia media;
+        private final Predicate<Map<String, Object>> pastWatermark;
+        // Next page to request; null once done or failed
+        private String request;
+        private int attempts;
+        private String error;
+
+        MediaFetch(GraphMedia media, String firstRequest, Predicate<Map<String, Object>> pastWatermark) {
+            this.media = media;
+            this.request = firstRequest;
+            this.pastWatermark = pastWatermark;
         }
 
-        return dto;
+        /**
+         * Takes a batch result for the current request and returns the page it read, or
+         * null if the request failed (and will be retried unless out of attempts).
+         */
+        MediaPage accept(GraphApiClient.BatchResult result, int maxRetries) {
+            if (!result.isSuccess()) {
+                if (++attempts > maxRetries) {
+                    error = result.error();
+                    request = null;
+                }
+                return null;
+            }
+            attempts = 0;
+            List<Map<String, Object>> comments = new ArrayList<>(result.page().data().size());
+            boolean crossedWatermark = false;
+            for (Map<String, Object> data : result.page().data()) {
+                if (pastWatermark.test(data)) {
+                    crossedWatermark = true;
+                } else {
+                    comments.add(data);
+                }
+            }
+            request = crossedWatermark || result.page().data().isEmpty() ? null : result.page().next();
+            return new MediaPage(media, comments, request);
+        }
     }
 }
 
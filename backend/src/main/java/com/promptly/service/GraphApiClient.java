@@ -0,0 +1,283 @@
+package com.promptly.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed access to the Graph API endpoints the app uses.
+ *
+ * Every call goes through the shared graphWebClient (see WebClientConfig), so they
+ * all share one tuned connection pool and the {@link GraphRateLimiter}. Methods
+ * return Monos; callers block or compose them as they need.
+ */
+@Component
+public class GraphApiClient {
+
+    private static final ParameterizedTypeReference<Map<String, Object>> JSON_OBJECT = new ParameterizedTypeReference<>() {};
+
+    /**
+     * Most sub-requests the Graph API accepts in one batch call.
+     */
+    public static final int MAX_BATCH_SIZE = 50;
+
+    private static final String MEDIA_FIELDS = "id,timestamp,comments_count";
+    private static final String COMMENT_FIELDS = "id,text,username,like_count,timestamp,from";
+    private static final String ACCOUNT_FIELDS = "username,profile_picture_url";
+    private static final String PAGE_FIELDS = "id,name,access_token,instagram_business_account";
+
+    @Autowired
+    private WebClient graphWebClient;
+
+    @Autowired
+    private GraphRateLimiter graphRateLimiter;
+
+    @Value("${facebook.app.id}")
+    private String appId;
+
+    @Value("${facebook.app.secret}")
+    private String appSecret;
+
+    @Value("${facebook.redirect.uri}")
+    private String redirectUri;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * One page of a Graph API edge; next is the paging.next URL, or null on the last page.
+     */
+    public record Page(List<Map<String, Object>> data, String next) {
+    }
+
+    /**
+     * First page of an Instagram account's media, newest first.
+     */
+    public Mono<Page> listMedia(String instagramAccountId, String accessToken, int limit) {
+        return getPage(graphWebClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/{accountId}/media")
+                        .queryParam("access_token", accessToken)
+                        .queryParam("fields", MEDIA_FIELDS)
+                        .queryParam("limit", limit)
+                        .build(instagramAccountId)));
+    }
+
+    /**
+     * First page of a media item's comments, newest first.
+     */
+    public Mono<Page> listComments(String mediaId, String accessToken, int limit) {
+        return getPage(graphWebClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/{mediaId}/comments")
+                        .queryParam("access_token", accessToken)
+                        .queryParam("fields", COMMENT_FIELDS)
+                        .queryParam("limit", limit)
+                        .build(mediaId)));
+    }
+
+    /**
+     * Follows a paging.next URL returned by a previous page.
+     */
+    public Mono<Page> nextPage(String nextUrl) {
+        return getPage(graphWebClient.get().uri(URI.create(nextUrl)));
+    }
+
+    /**
+     * Outcome of one sub-request of a batch call: the page, or the error Meta returned
+     * for it (a null error code means the sub-request timed out or returned no body).
+     */
+    public record BatchResult(Page page, Integer errorCode, String error) {
+        public boolean isSuccess() {
+            return page != null;
+        }
+    }
+
+    /**
+     * Relative URL of the first page of a media item's comments, for {@link #batchGet}.
+     */
+    public String commentsRequest(String mediaId, int limit) {
+        return UriComponentsBuilder.fromPath("{mediaId}/comments")
+                .queryParam("fields", COMMENT_FIELDS)
+                .queryParam("limit", limit)
+                .buildAndExpand(mediaId)
+                .encode()
+                .toUriString();
+    }
+
+    /**
+     * A paging.next URL as a relative request for {@link #batchGet}, without its access
+     * token, so it can be stored and sent again later.
+     */
+    public String pageRequest(String nextUrl) {
+        return relativeUrl(UriComponentsBuilder.fromUriString(nextUrl)
+                .replaceQueryParam("access_token")
+                .build(true)
+                .toUriString());
+    }
+
+    /**
+     * Sends up to {@link #MAX_BATCH_SIZE} GET requests as one batch call and returns their
+     * results in request order. Requests are relative URLs (as from
+     * {@link #commentsRequest}) or paging.next URLs. Each sub-request counts against the
+     * rate limits; throttling errors in the results are reported to the rate limiter.
+     */
+    public Mono<List<BatchResult>> batchGet(String accessToken, List<String> requests) {
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("A Graph API batch takes at most " + MAX_BATCH_SIZE + " requests");
+        }
+        List<Map<String, String>> batch = new ArrayList<>(requests.size());
+        for (String request : requests) {
+            batch.add(Map.of("method", "GET", "relative_url", relativeUrl(request)));
+        }
+        String batchJson;
+        try {
+            batchJson = objectMapper.writeValueAsString(batch);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to encode Graph API batch", e);
+        }
+
+        return graphWebClient.post()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/")
+                        .queryParam("access_token", accessToken)
+                        .build())
+                .attribute(GraphRateLimiter.CALLS_ATTRIBUTE, requests.size())
+                .body(BodyInserters.fromFormData("batch", batchJson).with("include_headers", "false"))
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .map(response -> {
+                    List<BatchResult> results = new ArrayList<>(requests.size());
+                    for (int i = 0; i < requests.size(); i++) {
+                        BatchResult result = toBatchResult(response.get(i));
+                        graphRateLimiter.reportError(accessToken, result.errorCode());
+                        results.add(result);
+                    }
+                    return results;
+                });
+    }
+
+    /**
+     * Posts a reply to a comment and returns the new reply's id.
+     */
+    public Mono<String> replyToComment(String commentId, String message, String accessToken) {
+        return graphWebClient.post()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/{commentId}/replies")
+                        .queryParam("access_token", accessToken)
+                        .build(commentId))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("message", message))
+                .retrieve()
+                .bodyToMono(JSON_OBJECT)
+                .map(response -> {
+                    if (!(response.get("id") instanceof String id)) {
+                        throw new RuntimeException("Failed to send reply to Instagram");
+                    }
+                    return id;
+                });
+    }
+
+    /**
+     * Username and profile picture of an Instagram business account.
+     */
+    public Mono<Map<String, Object>> getAccount(String instagramAccountId, String accessToken) {
+        return graphWebClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/{accountId}")
+                        .queryParam("access_token", accessToken)
+                        .queryParam("fields", ACCOUNT_FIELDS)
+                        .build(instagramAccountId))
+                .retrieve()
+                .bodyToMono(JSON_OBJECT);
+    }
+
+    /**
+     * Exchanges an OAuth authorization code for a user access token.
+     */
+    public Mono<String> exchangeCodeForToken(String code) {
+        return graphWebClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/oauth/access_token")
+                        .queryParam("client_id", appId)
+                        .queryParam("client_secret", appSecret)
+                        .queryParam("redirect_uri", redirectUri)
+                        .queryParam("code", code)
+                        .build())
+                .retrieve()
+                .bodyToMono(JSON_OBJECT)
+                .map(response -> {
+                    if (!(response.get("access_token") instanceof String token)) {
+                        throw new RuntimeException("Failed to exchange code for access token: " + response);
+                    }
+                    return token;
+                });
+    }
+
+    /**
+     * Facebook Pages the user manages, with their page tokens and linked Instagram accounts.
+     */
+    public Mono<List<Map<String, Object>>> listPages(String userAccessToken) {
+        return getPage(graphWebClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/me/accounts")
+                        .queryParam("access_token", userAccessToken)
+                        .queryParam("fields", PAGE_FIELDS)
+                        .build()))
+                .map(Page::data);
+    }
+
+    @SuppressWarnings("unchecked")
+    private BatchResult toBatchResult(JsonNode item) {
+        if (item == null || item.isNull() || !item.path("body").isTextual()) {
+            return new BatchResult(null, null, "No response");
+        }
+        try {
+            Map<String, Object> body = objectMapper.readValue(item.get("body").asText(), Map.class);
+            if (item.path("code").asInt() == 200 && !body.containsKey("error")) {
+                return new BatchResult(toPage(body), null, null);
+            }
+            Map<String, Object> error = body.get("error") instanceof Map ? (Map<String, Object>) body.get("error") : Map.of();
+            return new BatchResult(null,
+                    error.get("code") instanceof Number n ? n.intValue() : null,
+                    error.get("message") instanceof String message ? message : "HTTP " + item.path("code").asInt());
+        } catch (JsonProcessingException e) {
+            return new BatchResult(null, null, "Unreadable response");
+        }
+    }
+
+    // Batch sub-requests are relative to the Graph API root, without the version prefix
+    private String relativeUrl(String url) {
+        if (!url.startsWith("http")) {
+            return url;
+        }
+        URI uri = URI.create(url);
+        String path = uri.getRawPath().replaceFirst("^/v\\d+\\.\\d+", "").replaceFirst("^/", "");
+        return uri.getRawQuery() != null ? path + "?" + uri.getRawQuery() : path;
+    }
+
+    private Mono<Page> getPage(WebClient.RequestHeadersSpec<?> request) {
+        return request.retrieve().bodyToMono(JSON_OBJECT).map(this::toPage);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Page toPage(Map<String, Object> response) {
+        Object data = response.get("data");
+        Object paging = response.get("paging");
+        String next = paging instanceof Map ? (String) ((Map<String, Object>) paging).get("next") : null;
+        return new Page(data instanceof List ? (List<Map<String, Object>>) data : List.of(), next);
+    }
+}
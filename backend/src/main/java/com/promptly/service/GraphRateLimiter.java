@@ -0,0 +1,419 @@
+package com.promptly.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces Graph API calls so syncs run as fast as Meta allows without tripping its
+ * rate limits.
+ *
+ * Every request takes a token from the bucket of its access token (requests without
+ * one, like the OAuth exchange, share the app's bucket). Buckets refill at
+ * graph.rate-limit.requests-per-second, scaled down as the usage reported in
+ * X-App-Usage (per app) and X-Business-Use-Case-Usage (per token) climbs past
+ * slowdown-percent. At block-percent, or when Meta answers with a throttling error
+ * (codes 4, 17, 32, 613 or 80000-80014, or HTTP 429), the token (or the whole app for
+ * code 4) is paused for estimated_time_to_regain_access, or for an exponential backoff
+ * when Meta gives no estimate.
+ *
+ * Requests are delayed, never dropped, while the wait is under max-wait-ms; beyond
+ * that they fail with {@link RateLimitedException} so callers can defer the work.
+ *
+ * Token buckets are keyed by a digest of the access token, so tokens are not kept in
+ * memory, and are dropped once they have been unused for bucket-idle-ms with nothing
+ * owed, paused or backed off, so tokens that were refreshed or disconnected go away.
+ *
+ * Metrics: graph.api.requests{outcome=ok|throttled|deferred}, graph.api.usage (highest
+ * reported usage percent).
+ */
+@Component
+public class GraphRateLimiter implements ExchangeFilterFunction {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphRateLimiter.class);
+
+    private static final String APP_USAGE_HEADER = "X-App-Usage";
+    private static final String BUSINESS_USAGE_HEADER = "X-Business-Use-Case-Usage";
+
+    private static final Set<Integer> THROTTLING_CODES = Set.of(4, 17, 32, 613);
+
+    // A truncated SHA-256 is plenty to tell access tokens apart
+    private static final int TOKEN_KEY_BYTES = 16;
+
+    /**
+     * Request attribute with the number of Graph API calls a request stands for (the
+     * sub-request count of a batch request); Meta counts each one against the limits.
+     */
+    public static final String CALLS_ATTRIBUTE = GraphRateLimiter.class.getName() + ".calls";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${graph.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${graph.rate-limit.requests-per-second:10}")
+    private double requestsPerSecond;
+
+    @Value("${graph.rate-limit.burst:20}")
+    private int burst;
+
+    @Value("${graph.rate-limit.slowdown-percent:50}")
+    private int slowdownPercent;
+
+    @Value("${graph.rate-limit.block-percent:95}")
+    private int blockPercent;
+
+    @Value("${graph.rate-limit.initial-backoff-ms:60000}")
+    private long initialBackoffMs;
+
+    @Value("${graph.rate-limit.max-backoff-ms:900000}")
+    private long maxBackoffMs;
+
+    @Value("${graph.rate-limit.max-wait-ms:30000}")
+    private long maxWaitMs;
+
+    @Value("${graph.rate-limit.bucket-idle-ms:600000}")
+    private long bucketIdleMs;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private Bucket appBucket;
+
+    private final AtomicLong okCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong deferredCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        appBucket = new Bucket();
+        FunctionCounter.builder("graph.api.requests", okCount, AtomicLong::get).tag("outcome", "ok").register(meterRegistry);
+        FunctionCounter.builder("graph.api.requests", throttledCount, AtomicLong::get).tag("outcome", "throttled").register(meterRegistry);
+        FunctionCounter.builder("graph.api.requests", deferredCount, AtomicLong::get).tag("outcome", "deferred").register(meterRegistry);
+        Gauge.builder("graph.api.usage", this, GraphRateLimiter::highestUsage)
+                .description("Highest Graph API usage percent reported by Meta")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Thrown instead of sending a request that would have to wait longer than
+     * graph.rate-limit.max-wait-ms.
+     */
+    public static class RateLimitedException extends RuntimeException {
+        private final long retryAfterMs;
+
+        public RateLimitedException(long retryAfterMs) {
+            super("Graph API rate limit reached, retry in " + retryAfterMs + " ms");
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        public long getRetryAfterMs() {
+            return retryAfterMs;
+        }
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (!enabled) {
+            return next.exchange(request);
+        }
+        Bucket bucket = bucketFor(accessToken(request.url()));
+
+        int calls = request.attribute(CALLS_ATTRIBUTE).map(Integer.class::cast).orElse(1);
+
+        return Mono.defer(() -> {
+            long waitMs = bucket.reserve(System.currentTimeMillis(), calls);
+            if (waitMs > maxWaitMs) {
+                bucket.cancelReservation(calls);
+                deferredCount.incrementAndGet();
+                return Mono.error(new RateLimitedException(waitMs));
+            }
+            Mono<ClientResponse> exchange = Mono.defer(() -> awaitUnblocked(bucket))
+                    .then(Mono.defer(() -> next.exchange(request)))
+                    .flatMap(response -> observe(bucket, response));
+            return waitMs > 0 ? Mono.delay(Duration.ofMillis(waitMs)).then(exchange) : exchange;
+        });
+    }
+
+    // A pause may have started while the request was waiting for its turn
+    private Mono<Void> awaitUnblocked(Bucket bucket) {
+        long blockedMs = bucket.blockedMs(System.currentTimeMillis());
+        if (blockedMs <= 0) {
+            return Mono.empty();
+        }
+        if (blockedMs > maxWaitMs) {
+            deferredCount.incrementAndGet();
+            return Mono.error(new RateLimitedException(blockedMs));
+        }
+        return Mono.delay(Duration.ofMillis(blockedMs)).then(Mono.defer(() -> awaitUnblocked(bucket)));
+    }
+
+    private Mono<ClientResponse> observe(Bucket bucket, ClientResponse response) {
+        long now = System.currentTimeMillis();
+        UsageReport appUsage = parseUsage(response.headers().header(APP_USAGE_HEADER).stream().findFirst().orElse(null), false);
+        UsageReport tokenUsage = parseUsage(response.headers().header(BUSINESS_USAGE_HEADER).stream().findFirst().orElse(null), true);
+        if (appUsage != null) {
+            appBucket.updateUsage(appUsage, now);
+        }
+        if (tokenUsage != null) {
+            bucket.updateUsage(tokenUsage, now);
+        }
+
+        if (!response.statusCode().isError()) {
+            bucket.resetBackoff();
+            appBucket.resetBackoff();
+            okCount.incrementAndGet();
+            return Mono.just(response);
+        }
+
+        // Error bodies are small; read the code, then hand the body back untouched
+        return response.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .map(body -> {
+                    Integer code = errorCode(body);
+                    if (response.statusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value() || isThrottlingCode(code)) {
+                        throttled(bucket, code, now, regainAccessMs(tokenUsage, appUsage));
+                    }
+                    return response.mutate().body(body).build();
+                });
+    }
+
+    /**
+     * Records a throttling error that arrived inside a successful response, such as a
+     * failed sub-request of a batch call.
+     */
+    public void reportError(String accessToken, Integer code) {
+        if (enabled && isThrottlingCode(code)) {
+            throttled(bucketFor(accessToken), code, System.currentTimeMillis(), 0);
+        }
+    }
+
+    /**
+     * Drops the buckets of access tokens that have not been used for bucket-idle-ms and
+     * have nothing left to enforce.
+     */
+    @Scheduled(fixedDelayString = "${graph.rate-limit.eviction-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        long now = System.currentTimeMillis();
+        int before = buckets.size();
+        // computeIfPresent runs under the same lock as bucketFor's compute, so a bucket
+        // handed out (and touched) meanwhile is not idle and stays
+        for (String key : buckets.keySet()) {
+            buckets.computeIfPresent(key, (k, bucket) -> bucket.isIdle(now) ? null : bucket);
+        }
+        int evicted = before - buckets.size();
+        if (evicted > 0) {
+            logger.debug("Dropped {} idle Graph API rate limit buckets, {} left", evicted, buckets.size());
+        }
+    }
+
+    private Bucket bucketFor(String accessToken) {
+        if (accessToken == null) {
+            return appBucket;
+        }
+        long now = System.currentTimeMillis();
+        return buckets.compute(tokenKey(accessToken), (key, bucket) -> {
+            Bucket current = bucket != null ? bucket : new Bucket();
+            current.lastUsedAt = now;
+            return current;
+        });
+    }
+
+    private String tokenKey(String accessToken) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(accessToken.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, TOKEN_KEY_BYTES));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void throttled(Bucket bucket, Integer code, long now, long regainAccessMs) {
+        throttledCount.incrementAndGet();
+        Bucket target = code != null && code == 4 ? appBucket : bucket;
+        long pauseMs = target.backOff(now, regainAccessMs);
+        logger.warn("Graph API throttled (code {}), pausing {} for {} ms", code,
+                target == appBucket ? "all calls" : "this access token", pauseMs);
+    }
+
+    private boolean isThrottlingCode(Integer code) {
+        // 80000-80014 are the business use case (per Page / Instagram account) limits
+        return code != null && (THROTTLING_CODES.contains(code) || (code >= 80000 && code <= 80014));
+    }
+
+    private Integer errorCode(String body) {
+        try {
+            JsonNode code = objectMapper.readTree(body).path("error").path("code");
+            return code.isNumber() ? code.intValue() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private long regainAccessMs(UsageReport... reports) {
+        long regainMs = 0;
+        for (UsageReport report : reports) {
+            if (report != null) {
+                regainMs = Math.max(regainMs, report.regainAccessMs());
+            }
+        }
+        return regainMs;
+    }
+
+    /**
+     * X-App-Usage is {"call_count":28,"total_time":25,"total_cputime":25};
+     * X-Business-Use-Case-Usage maps business ids to lists of such objects, each with an
+     * estimated_time_to_regain_access in minutes. The highest percentage wins.
+     */
+    private UsageReport parseUsage(String header, boolean businessUseCase) {
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        try {
+            JsonNode root = objectMapper.readTree(header);
+            UsageReport report = new UsageReport(0, 0);
+            if (!businessUseCase) {
+                return report.merge(root);
+            }
+            Iterator<JsonNode> businesses = root.elements();
+            while (businesses.hasNext()) {
+                for (JsonNode entry : businesses.next()) {
+                    report = report.merge(entry);
+                }
+            }
+            return report;
+        } catch (Exception e) {
+            logger.debug("Ignoring unparseable Graph API usage header: {}", header);
+            return null;
+        }
+    }
+
+    private String accessToken(URI url) {
+        if (url.getRawQuery() == null || !url.getRawQuery().contains("access_token=")) {
+            return null;
+        }
+        return UriComponentsBuilder.fromUri(url).build().getQueryParams().getFirst("access_token");
+    }
+
+    private double highestUsage() {
+        int highest = appBucket.usagePercent;
+        for (Bucket bucket : buckets.values()) {
+            highest = Math.max(highest, bucket.usagePercent);
+        }
+        return highest;
+    }
+
+    private record UsageReport(int percent, long regainAccessMs) {
+        UsageReport merge(JsonNode usage) {
+            int highest = Math.max(percent, Math.max(usage.path("call_count").asInt(0),
+                    Math.max(usage.path("total_time").asInt(0), usage.path("total_cputime").asInt(0))));
+            long regain = Math.max(regainAccessMs, usage.path("estimated_time_to_regain_access").asLong(0) * 60_000);
+            return new UsageReport(highest, regain);
+        }
+    }
+
+    /**
+     * Token bucket that lets its balance go negative: each caller reserves a token and
+     * waits for the refill to cover it, so queued requests go out in order and evenly
+     * spaced instead of all at once.
+     */
+    private final class Bucket {
+        private double tokens = burst;
+        private long refilledAt = System.currentTimeMillis();
+        private volatile long blockedUntil;
+        private long backoffMs;
+        private volatile int usagePercent;
+        private volatile long lastUsedAt = System.currentTimeMillis();
+
+        synchronized long reserve(long now, int calls) {
+            refill(now);
+            tokens -= calls;
+            long waitMs = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / ratePerMs());
+            return Math.max(waitMs, blockedMs(now));
+        }
+
+        long blockedMs(long now) {
+            return Math.max(blockedUntil, appBucket.blockedUntil) - now;
+        }
+
+        synchronized void cancelReservation(int calls) {
+            tokens += calls;
+        }
+
+        synchronized void updateUsage(UsageReport usage, long now) {
+            refill(now);
+            usagePercent = usage.percent();
+            if (usage.percent() >= blockPercent || usage.regainAccessMs() > 0) {
+                long pauseMs = usage.regainAccessMs() > 0 ? usage.regainAccessMs() : initialBackoffMs;
+                blockedUntil = Math.max(blockedUntil, now + pauseMs);
+            }
+        }
+
+        synchronized long backOff(long now, long regainAccessMs) {
+            backoffMs = backoffMs == 0 ? initialBackoffMs : Math.min(maxBackoffMs, backoffMs * 2);
+            long pauseMs = Math.max(backoffMs, regainAccessMs);
+            blockedUntil = Math.max(blockedUntil, now + pauseMs);
+            // Whatever was banked before the throttle no longer applies
+            tokens = Math.min(tokens, 0);
+            return pauseMs;
+        }
+
+        synchronized void resetBackoff() {
+            backoffMs = 0;
+        }
+
+        // Unused for bucket-idle-ms, refilled, and not paused or backing off
+        synchronized boolean isIdle(long now) {
+            refill(now);
+            return now - lastUsedAt >= bucketIdleMs && tokens >= burst && blockedUntil <= now && backoffMs == 0;
+        }
+
+        private void refill(long now) {
+            if (now > refilledAt) {
+                tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerMs());
+                refilledAt = now;
+            }
+        }
+
+        // Full speed below slowdown-percent, tapering to a tenth at block-percent
+        private double ratePerMs() {
+            int usage = Math.max(usagePercent, this == appBucket ? 0 : appBucket.usagePercent);
+            double factor = 1.0;
+            if (usage > slowdownPercent) {
+                factor = Math.max(0.1, (double) (blockPercent - usage) / (blockPercent - slowdownPercent));
+            }
+            return requestsPerSecond * factor / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.promptly.service;
+
+import com.promptly.event.CommentChangedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of the first few inbox pages (and counts) per brand and status,
+ * so dashboards polling GET /api/comments do not reach MySQL while nothing changes.
+ *
+ * Keys carry the brand's generation number. Any committed change to a brand's
+ * comments bumps the generation, which makes every cached entry for that brand
+ * unreachable at once; those entries then age out through the LRU bound or the TTL.
+ * A reader that started before the change stores its result under the old
+ * generation, so it can never serve stale data afterwards. Changes that publish no
+ * CommentChangedEvent, like a sync refreshing like counts, call
+ * {@link #invalidateAfterCommit} instead.
+ *
+ * Metrics: inbox.cache.requests{result=hit|miss}, inbox.cache.evictions,
+ * inbox.cache.invalidations and inbox.cache.size.
+ */
+@Component
+public class InboxCache {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${inbox.cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${inbox.cache.ttl-ms:30000}")
+    private long ttlMs;
+
+    @Value("${inbox.cache.max-pages:3}")
+    private int maxPages;
+
+    private final Map<Integer, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() > maxEntries) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    public void registerMetrics() {
+        FunctionCounter.builder("inbox.cache.requests", hits, AtomicLong::get).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("inbox.cache.requests", misses, AtomicLong::get).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("inbox.cache.evictions", evictions, AtomicLong::get)
+                .description("Entries removed by the size bound or TTL").register(meterRegistry);
+        FunctionCounter.builder("inbox.cache.invalidations", invalidations, AtomicLong::get)
+                .description("Brand-wide invalidations caused by comment changes").register(meterRegistry);
+        Gauge.builder("inbox.cache.size", this, InboxCache::size).register(meterRegistry);
+    }
+
+    /**
+     * Only the first max-pages pages of each listing are cached; pageIndex is 0-based.
+     */
+    public boolean isCacheable(int pageIndex) {
+        return pageIndex >= 0 && pageIndex < maxPages;
+    }
+
+    /**
+     * Builds a key bound to the brand's current generation. Take the key before
+     * reading from the database so a concurrent change invalidates the result.
+     */
+    public Key key(Integer brandId, String status, String slot) {
+        long generation = generations.computeIfAbsent(brandId, id -> new AtomicLong()).get();
+        return new Key(brandId, generation, status, slot);
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            evictions.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return (T) entry.value;
+    }
+
+    public synchronized void put(Key key, Object value) {
+        entries.put(key, new Entry(value, System.currentTimeMillis() + ttlMs));
+    }
+
+    public void invalidate(Integer brandId) {
+        generations.computeIfAbsent(brandId, id -> new AtomicLong()).incrementAndGet();
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Invalidates the brand once the current transaction commits, or now if there is none.
+     */
+    public void invalidateAfterCommit(Integer brandId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(brandId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidate(brandId);
+            }
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCommentChanged(CommentChangedEvent event) {
+        invalidate(event.getBrandId());
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    public record Key(Integer brandId, long generation, String status, String slot) {
+    }
+
+    private record Entry(Object value, long expiresAt) {
+    }
+}
@@ -0,0 +1,281 @@
+package com.promptly.service;
+
+import com.promptly.dto.CommentDto;
+import com.promptly.entity.Comment;
+import com.promptly.event.CommentChangedEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans committed inbox changes out to Server-Sent Event subscribers, per brand.
+ *
+ * Every subscriber has a bounded queue drained by a small shared pool, so one slow
+ * client never holds up the committing thread or other clients; a subscriber whose
+ * queue overflows is disconnected and expected to reconnect. Each brand keeps a short
+ * history so a reconnecting client can resume from its Last-Event-ID; if the gap is
+ * no longer covered it receives a "resync" event and should reload the inbox.
+ *
+ * Changes are published once their transaction commits. A transaction that creates
+ * more than inbox.stream.coalesce-threshold comments for a brand (a sync page, a
+ * webhook batch) sends a single "comments.created" event with their count instead of
+ * one event per comment, which would overflow subscriber queues; clients reload the
+ * inbox on it, as on "resync".
+ */
+@Component
+public class InboxEventHub {
+
+    private static final Logger logger = LoggerFactory.getLogger(InboxEventHub.class);
+
+    private static final Object HEARTBEAT = new Object();
+
+    @Value("${inbox.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${inbox.stream.subscriber-buffer:256}")
+    private int subscriberBuffer;
+
+    @Value("${inbox.stream.history-size:1000}")
+    private int historySize;
+
+    @Value("${inbox.stream.coalesce-threshold:20}")
+    private int coalesceThreshold;
+
+    private final ExecutorService dispatcher = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "inbox-stream-dispatch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Integer, BrandChannel> channels = new ConcurrentHashMap<>();
+
+    // Seeded from the clock so ids keep increasing across restarts and stale
+    // Last-Event-IDs from a previous process are detected as gaps
+    private final long startSequence = System.currentTimeMillis() * 1000;
+    private final AtomicLong sequence = new AtomicLong(startSequence);
+
+    public SseEmitter subscribe(Integer brandId, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        BrandChannel channel = channels.computeIfAbsent(brandId, id -> new BrandChannel());
+        Subscriber subscriber = new Subscriber(emitter);
+
+        emitter.onCompletion(() -> channel.remove(subscriber));
+        emitter.onTimeout(() -> channel.remove(subscriber));
+        emitter.onError(error -> channel.remove(subscriber));
+
+        synchronized (channel) {
+            if (lastEventId != null) {
+                if (lastEventId < startSequence || lastEventId < channel.lastTrimmedId) {
+                    enqueue(subscriber, new InboxEvent(sequence.get(), "resync", Map.of()));
+                }
+                for (InboxEvent event : channel.history) {
+                    if (event.id > lastEventId) {
+                        enqueue(subscriber, event);
+                    }
+                }
+            }
+            channel.subscribers.add(subscriber);
+        }
+        return emitter;
+    }
+
+    @EventListener
+    public void onCommentChanged(CommentChangedEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publishChanges(List.of(event));
+            return;
+        }
+        // Collected per transaction (a suspended outer transaction keeps its own batch)
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingChanges pending) {
+                pending.events.add(event);
+                return;
+            }
+        }
+        PendingChanges pending = new PendingChanges();
+        pending.events.add(event);
+        TransactionSynchronizationManager.registerSynchronization(pending);
+    }
+
+    private void publishChanges(List<CommentChangedEvent> events) {
+        Map<Integer, Integer> createdByBrand = new LinkedHashMap<>();
+        for (CommentChangedEvent event : events) {
+            if (event.getType() == CommentChangedEvent.Type.CREATED) {
+                createdByBrand.merge(event.getBrandId(), 1, Integer::sum);
+            }
+        }
+        for (CommentChangedEvent event : events) {
+            boolean created = event.getType() == CommentChangedEvent.Type.CREATED;
+            if (created && createdByBrand.get(event.getBrandId()) > coalesceThreshold) {
+                continue;
+            }
+            publish(event.getBrandId(), created ? "comment.created" : "comment.status_changed", toDto(event.getComment()));
+        }
+        createdByBrand.forEach((brandId, count) -> {
+            if (count > coalesceThreshold) {
+                publish(brandId, "comments.created", Map.of("count", count));
+            }
+        });
+    }
+
+    public void publish(Integer brandId, String type, Object data) {
+        BrandChannel channel = channels.computeIfAbsent(brandId, id -> new BrandChannel());
+        synchronized (channel) {
+            InboxEvent event = new InboxEvent(sequence.incrementAndGet(), type, data);
+            channel.history.addLast(event);
+            while (channel.history.size() > historySize) {
+                channel.lastTrimmedId = channel.history.removeFirst().id;
+            }
+            for (Subscriber subscriber : channel.subscribers) {
+                enqueue(subscriber, event);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${inbox.stream.heartbeat-ms:15000}")
+    public void sendHeartbeats() {
+        for (BrandChannel channel : channels.values()) {
+            for (Subscriber subscriber : channel.subscribers) {
+                // Heartbeats are best effort; a full queue will be dealt with by the next event
+                if (subscriber.queue.offer(HEARTBEAT)) {
+                    scheduleDrain(subscriber);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (BrandChannel channel : channels.values()) {
+            for (Subscriber subscriber : channel.subscribers) {
+                subscriber.emitter.complete();
+            }
+        }
+        dispatcher.shutdownNow();
+    }
+
+    private void enqueue(Subscriber subscriber, Object item) {
+        if (subscriber.closed.get()) {
+            return;
+        }
+        if (!subscriber.queue.offer(item)) {
+            logger.debug("Dropping slow inbox stream subscriber");
+            subscriber.close();
+            return;
+        }
+        scheduleDrain(subscriber);
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            dispatcher.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            Object item;
+            while (!subscriber.closed.get() && (item = subscriber.queue.poll()) != null) {
+                if (item == HEARTBEAT) {
+                    subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                } else {
+                    InboxEvent event = (InboxEvent) item;
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(String.valueOf(event.id))
+                            .name(event.type)
+                            .data(event.data, MediaType.APPLICATION_JSON));
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client went away or the emitter already completed
+            subscriber.close();
+        } finally {
+            subscriber.draining.set(false);
+        }
+        if (!subscriber.closed.get() && !subscriber.queue.isEmpty()) {
+            scheduleDrain(subscriber);
+        }
+    }
+
+    private CommentDto toDto(Comment comment) {
+        CommentDto dto = new CommentDto();
+        dto.setId(comment.getId());
+        dto.setCommentId(comment.getCommentId());
+        dto.setMediaId(comment.getMediaId());
+        dto.setParentId(comment.getParentId());
+        dto.setText(comment.getText());
+        dto.setUsername(comment.getUsername());
+        dto.setUserId(comment.getUserId());
+        dto.setTimestamp(comment.getTimestamp());
+        dto.setLikeCount(comment.getLikeCount());
+        dto.setStatus(comment.getStatus().name());
+        dto.setCreatedAt(comment.getCreatedAt());
+        dto.setUpdatedAt(comment.getUpdatedAt());
+        return dto;
+    }
+
+    private record InboxEvent(long id, String type, Object data) {
+    }
+
+    // A transaction's changes, published once it commits. Compared by identity, since the
+    // events keep changing after the synchronization is registered.
+    private final class PendingChanges implements TransactionSynchronization {
+        private final List<CommentChangedEvent> events = new ArrayList<>();
+
+        @Override
+        public void afterCommit() {
+            publishChanges(events);
+        }
+    }
+
+    private static final class BrandChannel {
+        private final ArrayDeque<InboxEvent> history = new ArrayDeque<>();
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        private long lastTrimmedId;
+
+        void remove(Subscriber subscriber) {
+            subscriber.closed.set(true);
+            subscribers.remove(subscriber);
+        }
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(subscriberBuffer);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                emitter.complete();
+            }
+        }
+    }
+}
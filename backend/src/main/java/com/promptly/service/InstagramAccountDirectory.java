@@ -0,0 +1,176 @@
+package com.promptly.service;
+
+import com.promptly.entity.InstagramAccount;
+import com.promptly.repository.InstagramAccountRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory directory of Instagram accounts, indexed by id, by Instagram business
+ * account id and by brand (connected accounts only), so the webhook and sync hot
+ * paths resolve accounts with a hash lookup instead of a query.
+ *
+ * The whole table is loaded at startup into an immutable snapshot. Writers call
+ * {@link #refresh()} or {@link #refresh(Integer)} after changing a row (OAuth connect,
+ * disconnect, a completed sync); the reload runs once their transaction commits.
+ * Snapshots older than instagram.accounts.directory-ttl-ms are reloaded on access, to
+ * pick up changes made by other instances. Returned accounts are shared: treat them as
+ * read-only and write through the repository.
+ */
+@Component
+public class InstagramAccountDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstagramAccountDirectory.class);
+
+    @Autowired
+    private InstagramAccountRepository instagramAccountRepository;
+
+    @Value("${instagram.accounts.directory-ttl-ms:300000}")
+    private long ttlMs;
+
+    private volatile Snapshot snapshot;
+
+    private record Snapshot(Map<Integer, InstagramAccount> byId,
+                            Map<String, InstagramAccount> byBusinessAccountId,
+                            Map<Integer, InstagramAccount> connectedByBrand,
+                            long loadedAt) {
+
+        static Snapshot of(Collection<InstagramAccount> accounts, long loadedAt) {
+            Map<Integer, InstagramAccount> byId = new HashMap<>();
+            Map<String, InstagramAccount> byBusinessAccountId = new HashMap<>();
+            Map<Integer, InstagramAccount> connectedByBrand = new HashMap<>();
+            for (InstagramAccount account : accounts) {
+                byId.put(account.getId(), account);
+                byBusinessAccountId.put(account.getInstagramBusinessAccountId(), account);
+                if (Boolean.TRUE.equals(account.getIsConnected())) {
+                    connectedByBrand.put(account.getBrandId(), account);
+                }
+            }
+            return new Snapshot(Map.copyOf(byId), Map.copyOf(byBusinessAccountId), Map.copyOf(connectedByBrand), loadedAt);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        Snapshot loaded = reload();
+        logger.info("Loaded {} Instagram accounts into the account directory", loaded.byId().size());
+    }
+
+    public Optional<InstagramAccount> findById(Integer id) {
+        return Optional.ofNullable(current().byId().get(id));
+    }
+
+    /**
+     * The account with this Instagram business account id, connected or not.
+     */
+    public Optional<InstagramAccount> findByBusinessAccountId(String instagramBusinessAccountId) {
+        return Optional.ofNullable(current().byBusinessAccountId().get(instagramBusinessAccountId));
+    }
+
+    /**
+     * Reads the account with this Instagram business account id from the database,
+     * bypassing the snapshot, and puts it into the snapshot. For callers that cannot take
+     * a miss or a disconnected account at face value: another instance may have connected
+     * it since the snapshot was loaded, and only this instance's own writes refresh it.
+     */
+    public Optional<InstagramAccount> reloadByBusinessAccountId(String instagramBusinessAccountId) {
+        Optional<InstagramAccount> account = instagramAccountRepository.findByInstagramBusinessAccountId(instagramBusinessAccountId);
+        account.ifPresent(this::replace);
+        return account;
+    }
+
+    public Optional<InstagramAccount> findConnectedByBrand(Integer brandId) {
+        return Optional.ofNullable(current().connectedByBrand().get(brandId));
+    }
+
+    public Collection<InstagramAccount> findConnected() {
+        return current().connectedByBrand().values();
+    }
+
+    /**
+     * Reloads every account, after the current transaction commits if there is one.
+     */
+    public void refresh() {
+        afterCommit(this::reload);
+    }
+
+    /**
+     * Reloads one account, after the current transaction commits if there is one.
+     */
+    public void refresh(Integer accountId) {
+        afterCommit(() -> reloadAccount(accountId));
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null || System.currentTimeMillis() - current.loadedAt() > ttlMs) {
+            current = reloadIfStale();
+        }
+        return current;
+    }
+
+    private synchronized Snapshot reloadIfStale() {
+        Snapshot current = snapshot;
+        if (current != null && System.currentTimeMillis() - current.loadedAt() <= ttlMs) {
+            return current;
+        }
+        return reload();
+    }
+
+    private synchronized Snapshot reload() {
+        snapshot = Snapshot.of(instagramAccountRepository.findAll(), System.currentTimeMillis());
+        return snapshot;
+    }
+
+    private synchronized void reloadAccount(Integer accountId) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            reload();
+            return;
+        }
+        List<InstagramAccount> accounts = new ArrayList<>(current.byId().values());
+        accounts.removeIf(account -> account.getId().equals(accountId));
+        instagramAccountRepository.findById(accountId).ifPresent(accounts::add);
+        // Keeps the snapshot's age: one row is fresh, the others are not
+        snapshot = Snapshot.of(accounts, current.loadedAt());
+    }
+
+    private synchronized void replace(InstagramAccount account) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            reload();
+            return;
+        }
+        List<InstagramAccount> accounts = new ArrayList<>(current.byId().values());
+        accounts.removeIf(existing -> existing.getId().equals(account.getId()));
+        accounts.add(account);
+        snapshot = Snapshot.of(accounts, current.loadedAt());
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
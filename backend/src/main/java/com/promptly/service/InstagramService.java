@@ -8,7 +8,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.reactive.function.client.WebClient;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
@@ -24,7 +23,10 @@ public class InstagramService {
     private InstagramAccountRepository instagramAccountRepository;
 
     @Autowired
-    private WebClient.Builder webClientBuilder;
+    private InstagramAccountDirectory accountDirectory;
+
+    @Autowired
+    private GraphApiClient graphApiClient;
 
     @Value("${facebook.app.id}")
     private String appId;
@@ -35,9 +37,6 @@ public class InstagramService {
     @Value("${frontend.url}")
     private String frontendUrl;
 
-    @Value("${facebook.app.secret}")
-    private String appSecret;
-
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     public String getConnectUrl(Integer brandId, Integer userId) {
@@ -81,13 +80,13 @@ public class InstagramService {
         }
 
         // Exchange code for access token
-        String accessToken = exchangeCodeForToken(code);
+        String accessToken = graphApiClient.exchangeCodeForToken(code).block();
 
         // Get pages
-        Map<String, Object> pagesResponse = getPages(accessToken);
+        List<Map<String, Object>> pages = graphApiClient.listPages(accessToken).block();
 
         // Find page with Instagram account
-        Map<String, Object> pageWithInstagram = findPageWithInstagram(pagesResponse);
+        Map<String, Object> pageWithInstagram = findPageWithInstagram(pages);
 
         if (pageWithInstagram == null) {
             throw new RuntimeException("No Instagram account found");
@@ -105,7 +104,7 @@ public class InstagramService {
         String instagramAccountId = (String) instagramAccount.get("id");
 
         // Get Instagram account details
-        Map<String, Object> igDetails = getInstagramAccountDetails(instagramAccountId, pageAccessToken);
+        Map<String, Object> igDetails = graphApiClient.getAccount(instagramAccountId, pageAccessToken).block();
 
         // Save or update Instagram account
         InstagramAccount account = instagramAccountRepository
@@ -121,11 +120,12 @@ public class InstagramService {
         account.setIsConnected(true);
 
         instagramAccountRepository.save(account);
+        accountDirectory.refresh();
     }
 
     public InstagramAccountDto getAccount(Integer brandId) {
-        InstagramAccount account = instagramAccountRepository
-                .findByBrandIdAndIsConnected(brandId, true)
+        InstagramAccount account = accountDirectory
+                .findConnectedByBrand(brandId)
                 .orElseThrow(() -> new RuntimeException("No Instagram account connected"));
 
         return toDto(account);
@@ -139,50 +139,10 @@ public class InstagramService {
 
         account.setIsConnected(false);
         instagramAccountRepository.save(account);
+        accountDirectory.refresh(account.getId());
     }
 
-    @SuppressWarnings("unchecked")
-    private String exchangeCodeForToken(String code) {
-        WebClient webClient = webClientBuilder.baseUrl("https://graph.facebook.com/v18.0").build();
-
-        Map<String, Object> response = webClient.get()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/oauth/access_token")
-                        .queryParam("client_id", appId)
-                        .queryParam("client_secret", appSecret)
-                        .queryParam("redirect_uri", redirectUri)
-                        .queryParam("code", code)
-                        .build())
-                .retrieve()
-                .bodyToMono(Map.class)
-                .block();
-
-        if (response != null && response.containsKey("access_token")) {
-            return (String) response.get("access_token");
-        }
-
-        throw new RuntimeException("Failed to exchange code for access token: " + response);
-    }
-
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> getPages(String accessToken) {
-        WebClient webClient = webClientBuilder.baseUrl("https://graph.facebook.com/v18.0").build();
-
-        return webClient.get()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/me/accounts")
-                        .queryParam("access_token", accessToken)
-                        .queryParam("fields", "id,name,access_token,instagram_business_account")
-                        .build())
-                .retrieve()
-                .bodyToMono(Map.class)
-                .block();
-    }
-
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> findPageWithInstagram(Map<String, Object> pagesResponse) {
-        List<Map<String, Object>> pages = (List<Map<String, Object>>) pagesResponse.get("data");
-        
+    private Map<String, Object> findPageWithInstagram(List<Map<String, Object>> pages) {
         if (pages == null || pages.isEmpty()) {
             return null;
         }
@@ -197,18 +157,6 @@ public class InstagramService {
         return null;
     }
 
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> getInstagramAccountDetails(String accountId, String accessToken) {
-        WebClient webClient = webClientBuilder.baseUrl("https://graph.facebook.com/v18.0").build();
-
-        return (Map<String, Object>) webClient.get()
-                .uri("/{accountId}?access_token={token}&fields=username,profile_picture_url", accountId, accessToken)
-                .retrieve()
-                .bodyToMono(Map.class)
-                .block();
-    }
-
-
     private InstagramAccountDto toDto(InstagramAccount account) {
         InstagramAccountDto dto = new InstagramAccountDto();
         dto.setId(account.getId());
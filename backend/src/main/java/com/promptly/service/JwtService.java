@@ -13,12 +13,19 @@ import java.util.Date;
 @Service
 public class JwtService {
 
+    // Marks tokens that only open the inbox event stream (see generateStreamToken)
+    private static final String PURPOSE_CLAIM = "purpose";
+    private static final String STREAM_PURPOSE = "inbox_stream";
+
     @Value("${jwt.secret}")
     private String secret;
 
     @Value("${jwt.expiration}")
     private Long expiration;
 
+    @Value("${inbox.stream.token-ttl-ms:60000}")
+    private long streamTokenTtlMs;
+
     public String generateToken(Integer userId, String role, Integer brandId) {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + expiration);
@@ -35,15 +42,57 @@ public class JwtService {
                 .compact();
     }
 
+    /**
+     * A short-lived token that is only accepted by GET /api/comments/stream, where it
+     * can be passed as the access_token query parameter: a browser EventSource cannot
+     * send an Authorization header, and a token in a URL should not open anything else.
+     */
+    public String generateStreamToken(Integer userId, String role, Integer brandId) {
+        Date now = new Date();
+        SecretKey key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+
+        return Jwts.builder()
+                .claim("user_id", userId)
+                .claim("role", role)
+                .claim("brand_id", brandId)
+                .claim(PURPOSE_CLAIM, STREAM_PURPOSE)
+                .issuedAt(now)
+                .expiration(new Date(now.getTime() + streamTokenTtlMs))
+                .signWith(key)
+                .compact();
+    }
+
+    public long getStreamTokenTtlMs() {
+        return streamTokenTtlMs;
+    }
+
     public JwtClaims validateToken(String token) {
+        Claims claims = parse(token);
+        if (claims.get(PURPOSE_CLAIM) != null) {
+            throw new RuntimeException("Token is restricted to " + claims.get(PURPOSE_CLAIM));
+        }
+        return toJwtClaims(claims);
+    }
+
+    public JwtClaims validateStreamToken(String token) {
+        Claims claims = parse(token);
+        if (!STREAM_PURPOSE.equals(claims.get(PURPOSE_CLAIM))) {
+            throw new RuntimeException("Not an inbox stream token");
+        }
+        return toJwtClaims(claims);
+    }
+
+    private Claims parse(String token) {
         SecretKey key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
         
-        Claims claims = Jwts.parser()
+        return Jwts.parser()
                 .verifyWith(key)
                 .build()
                 .parseSignedClaims(token)
                 .getPayload();
+    }
 
+    private JwtClaims toJwtClaims(Claims claims) {
         Integer userId = claims.get("user_id", Integer.class);
         String role = claims.get("role", String.class);
         Integer brandId = claims.get("brand_id", Integer.class);
@@ -0,0 +1,325 @@
+package com.promptly.service;
+
+import com.promptly.entity.InstagramAccount;
+import com.promptly.entity.SyncJob;
+import com.promptly.entity.SyncJobCheckpoint;
+import com.promptly.repository.SyncJobCheckpointRepository;
+import com.promptly.repository.SyncJobRepository;
+import com.promptly.repository.SyncScheduleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.annotation.PostConstruct;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Persistence of comment sync jobs, their per-media checkpoints and the brands' sync
+ * schedules.
+ *
+ * Status changes commit on their own (REQUIRES_NEW) so they are visible to pollers
+ * right away, whatever the caller is doing. Progress, on the other hand, joins the
+ * caller's transaction: it must commit together with the comments it counts, or a
+ * resumed job would skip pages whose comments were never stored.
+ *
+ * A node works on a job only while it holds the job's lease: the lease is taken when
+ * the job is opened or taken over, renewed by the scheduler's heartbeat while the job
+ * is queued or running here, and released at shutdown. Leases are timed on the
+ * database clock. An unfinished job whose lease ran out (its node died or was
+ * stopped) is taken over by whichever node claims it first. Every write to a job
+ * first locks its row if this node still owns it and otherwise throws
+ * {@link LeaseLostException}, so a node that lost a lease cannot record progress or
+ * finish a job another node is running. Due scheduled runs are
+ * claimed the same way: a conditional UPDATE moves the brand's next_run_at a lease
+ * ahead, so only one node starts each run, and another node claims it again if the
+ * run is never rescheduled.
+ */
+@Service
+public class SyncJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncJobService.class);
+
+    private static final List<SyncJob.Status> UNFINISHED = List.of(SyncJob.Status.QUEUED, SyncJob.Status.RUNNING);
+    private static final List<SyncJob.Status> FINISHED = List.of(SyncJob.Status.COMPLETED, SyncJob.Status.FAILED);
+
+    @Autowired
+    private SyncJobRepository syncJobRepository;
+
+    @Autowired
+    private SyncJobCheckpointRepository syncJobCheckpointRepository;
+
+    @Autowired
+    private SyncScheduleRepository syncScheduleRepository;
+
+    @Autowired
+    private InstagramAccountDirectory accountDirectory;
+
+    @Value("${instagram.sync.jobs.retention-days:7}")
+    private int retentionDays;
+
+    @Value("${instagram.sync.jobs.lease-seconds:120}")
+    private long leaseSeconds;
+
+    @Value("${instagram.sync.node-id:}")
+    private String nodeId;
+
+    @PostConstruct
+    public void init() {
+        if (nodeId.isBlank()) {
+            // Unique per process, so a restarted node waits for its old leases like anyone else
+            nodeId = localHostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        }
+        logger.info("Sync jobs leased as node {}", nodeId);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Thrown by job writes once another node has taken the job over.
+     */
+    public static class LeaseLostException extends RuntimeException {
+        public LeaseLostException(Long jobId) {
+            super("Sync job " + jobId + " is leased by another node");
+        }
+    }
+
+    /**
+     * Returns the brand's unfinished job, or creates a queued one, and takes its lease
+     * for this node. An unfinished job another node holds a live lease on is returned
+     * as it is; check {@link #isLeasedHere} before running it.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public SyncJob openJob(Integer brandId, SyncJob.Trigger trigger) {
+        Optional<SyncJob> unfinished = syncJobRepository.findFirstByBrandIdAndStatusInOrderByIdDesc(brandId, UNFINISHED);
+        if (unfinished.isPresent()) {
+            Long jobId = unfinished.get().getId();
+            syncJobRepository.acquireLease(jobId, nodeId, leaseSeconds);
+            return syncJobRepository.findById(jobId)
+                    .orElseThrow(() -> new RuntimeException("Sync job not found"));
+        }
+        InstagramAccount account = accountDirectory.findConnectedByBrand(brandId)
+                .orElseThrow(() -> new RuntimeException("No Instagram account connected"));
+        SyncJob job = new SyncJob();
+        job.setBrandId(brandId);
+        job.setInstagramAccountId(account.getId());
+        job.setTriggerType(trigger);
+        job.setStatus(SyncJob.Status.QUEUED);
+        job = syncJobRepository.saveAndFlush(job);
+        syncJobRepository.acquireLease(job.getId(), nodeId, leaseSeconds);
+        return syncJobRepository.findById(job.getId())
+                .orElseThrow(() -> new RuntimeException("Sync job not found"));
+    }
+
+    public boolean isLeasedHere(SyncJob job) {
+        return nodeId.equals(job.getOwner());
+    }
+
+    /**
+     * Takes the lease of every unfinished job whose lease has expired and returns those
+     * jobs, to be resumed on this node. A job another node takes first is skipped.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<SyncJob> takeOverExpiredJobs() {
+        List<SyncJob> taken = new ArrayList<>();
+        for (Long jobId : syncJobRepository.findUnfinishedIdsWithExpiredLease()) {
+            if (syncJobRepository.acquireLease(jobId, nodeId, leaseSeconds) > 0) {
+                syncJobRepository.findById(jobId).ifPresent(taken::add);
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Keeps this node's leases on the given jobs alive. Returns the ids still held.
+     */
+    @Transactional
+    public List<Long> renewLeases(Collection<Long> jobIds) {
+        if (jobIds.isEmpty()) {
+            return List.of();
+        }
+        syncJobRepository.renewLeases(jobIds, nodeId, leaseSeconds);
+        return syncJobRepository.findIdsOwnedBy(jobIds, nodeId);
+    }
+
+    /**
+     * Gives up this node's leases on the given jobs, so other nodes can take them over
+     * right away.
+     */
+    @Transactional
+    public void releaseLeases(Collection<Long> jobIds) {
+        if (!jobIds.isEmpty()) {
+            syncJobRepository.releaseLeases(jobIds, nodeId);
+        }
+    }
+
+    public Optional<SyncJob> findJob(Long jobId, Integer brandId) {
+        return syncJobRepository.findByIdAndBrandId(jobId, brandId);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public SyncJob markRunning(Long jobId) {
+        requireLease(jobId);
+        SyncJob job = syncJobRepository.findById(jobId)
+                .orElseThrow(() -> new RuntimeException("Sync job not found"));
+        job.setStatus(SyncJob.Status.RUNNING);
+        job.setError(null);
+        // A resumed job keeps its original start: the sync covers changes since then
+        if (job.getStartedAt() == null) {
+            job.setStartedAt(LocalDateTime.now());
+        }
+        return syncJobRepository.save(job);
+    }
+
+    /**
+     * Records the media the job has to read. Returns false if the job already has a
+     * plan, in which case the pending checkpoints should be used instead.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean recordPlan(Long jobId, List<SyncJobCheckpoint> checkpoints) {
+        requireLease(jobId);
+        if (syncJobCheckpointRepository.existsByJobId(jobId)) {
+            return false;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (SyncJobCheckpoint checkpoint : checkpoints) {
+            checkpoint.setJobId(jobId);
+            checkpoint.setStatus(SyncJobCheckpoint.Status.PENDING);
+            checkpoint.setUpdatedAt(now);
+        }
+        syncJobCheckpointRepository.saveAll(checkpoints);
+        SyncJob job = syncJobRepository.findById(jobId)
+                .orElseThrow(() -> new RuntimeException("Sync job not found"));
+        job.setMediaTotal(checkpoints.size());
+        syncJobRepository.save(job);
+        return true;
+    }
+
+    public boolean hasPlan(Long jobId) {
+        return syncJobCheckpointRepository.existsByJobId(jobId);
+    }
+
+    public List<SyncJobCheckpoint> findPendingCheckpoints(Long jobId) {
+        return syncJobCheckpointRepository.findByJobIdAndStatus(jobId, SyncJobCheckpoint.Status.PENDING);
+    }
+
+    /**
+     * Marks media done (or failed) and adds to the job's counters, in the caller's
+     * transaction.
+     */
+    @Transactional
+    public void recordProgress(Long jobId, Collection<String> doneMediaIds, Collection<String> failedMediaIds, int commentsAdded) {
+        requireLease(jobId);
+        if (!doneMediaIds.isEmpty()) {
+            syncJobCheckpointRepository.updateStatus(jobId, doneMediaIds, SyncJobCheckpoint.Status.DONE);
+        }
+        if (!failedMediaIds.isEmpty()) {
+            syncJobCheckpointRepository.updateStatus(jobId, failedMediaIds, SyncJobCheckpoint.Status.FAILED);
+        }
+        syncJobRepository.addProgress(jobId, doneMediaIds.size(), failedMediaIds.size(), commentsAdded);
+    }
+
+    /**
+     * Records the next comments page to read for a media item the job has started, and
+     * adds to the job's comment count, in the caller's transaction.
+     */
+    @Transactional
+    public void recordPage(Long jobId, String mediaId, String nextPage, int commentsAdded) {
+        requireLease(jobId);
+        syncJobCheckpointRepository.updateNextPage(jobId, mediaId, nextPage);
+        syncJobRepository.addProgress(jobId, 0, 0, commentsAdded);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public SyncJob finish(Long jobId, SyncJob.Status status, String error) {
+        requireLease(jobId);
+        SyncJob job = syncJobRepository.findById(jobId)
+                .orElseThrow(() -> new RuntimeException("Sync job not found"));
+        job.setStatus(status);
+        job.setError(error != null && error.length() > 1000 ? error.substring(0, 1000) : error);
+        if (job.isFinished()) {
+            job.setFinishedAt(LocalDateTime.now());
+        }
+        return syncJobRepository.save(job);
+    }
+
+    /**
+     * Puts a job back in the queue, keeping this node's lease on it until it is due
+     * again so no other node picks it up early.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public SyncJob defer(Long jobId, long retryAfterMs, String error) {
+        SyncJob job = finish(jobId, SyncJob.Status.QUEUED, error);
+        syncJobRepository.renewLeases(List.of(jobId), nodeId, Math.max(leaseSeconds, (retryAfterMs + 999) / 1000));
+        return job;
+    }
+
+    private void requireLease(Long jobId) {
+        if (syncJobRepository.lockIfOwnedBy(jobId, nodeId).isEmpty()) {
+            throw new LeaseLostException(jobId);
+        }
+    }
+
+    /**
+     * Creates the brand's schedule, first due after delayMs, unless it exists.
+     */
+    @Transactional
+    public void ensureSchedule(Integer brandId, long intervalMs, long delayMs) {
+        syncScheduleRepository.insertIfAbsent(brandId, intervalMs, delayMs);
+    }
+
+    public List<Integer> findDueBrands() {
+        return syncScheduleRepository.findDueBrandIds();
+    }
+
+    /**
+     * Claims the brand's due run for this node. Returns false if it is not due (any
+     * more), typically because another node claimed it first.
+     */
+    @Transactional
+    public boolean claimScheduledRun(Integer brandId) {
+        return syncScheduleRepository.claimDue(brandId, nodeId, leaseSeconds) > 0;
+    }
+
+    public Optional<Long> findScheduleInterval(Integer brandId) {
+        return syncScheduleRepository.findById(brandId).map(schedule -> schedule.getIntervalMs());
+    }
+
+    /**
+     * Sets the brand's interval and makes its next run due after delayMs.
+     */
+    @Transactional
+    public void reschedule(Integer brandId, long intervalMs, long delayMs) {
+        syncScheduleRepository.reschedule(brandId, intervalMs, delayMs);
+    }
+
+    @Scheduled(fixedDelayString = "${instagram.sync.jobs.cleanup-interval-ms:3600000}")
+    @Transactional
+    public void deleteOldJobs() {
+        int deleted = syncJobRepository.deleteFinishedBefore(FINISHED, LocalDateTime.now().minusDays(retentionDays));
+        if (deleted > 0) {
+            logger.info("Deleted {} finished sync jobs older than {} days", deleted, retentionDays);
+        }
+    }
+
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "node";
+        }
+    }
+}
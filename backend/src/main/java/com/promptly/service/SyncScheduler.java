@@ -0,0 +1,350 @@
+package com.promptly.service;
+
+import com.promptly.entity.InstagramAccount;
+import com.promptly.entity.SyncJob;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs comment syncs for every connected Instagram account in the background.
+ *
+ * Each brand has its own polling interval: a sync that finds new comments halves
+ * it (down to min-interval-ms), a sync that finds nothing doubles it (up to
+ * max-interval-ms), and failures back off like idle runs. Every next run time gets
+ * random jitter so accounts do not line up on the same tick. A sync deferred by the
+ * Graph API rate limiter is retried once the limit is expected to clear. Schedules
+ * are kept in the database and shared by all nodes: each tick claims the brands that
+ * are due (see {@link SyncJobService#claimScheduledRun}), so every run happens on one node.
+ *
+ * Syncs run on a fixed pool of workers fed by a priority queue; manual requests from
+ * POST /api/comments/sync jump ahead of scheduled ones. A brand is never queued or
+ * running more than once at a time.
+ *
+ * Every run is a persisted SyncJob. A brand's unfinished job (interrupted by a
+ * restart, or deferred by the rate limiter) is resumed by its next run rather than
+ * replaced. Jobs are leased (see {@link SyncJobService}): a heartbeat keeps the leases
+ * of this node's queued and running jobs alive, a brand whose job another node holds
+ * is left to that node, and unfinished jobs whose lease expired are taken over and
+ * resumed, at startup and on every tick. A queued job whose lease was lost is dropped
+ * by the heartbeat; a running one stops at its next write, which the job's new owner
+ * refuses, and is neither finished nor rescheduled here.
+ */
+@Component
+public class SyncScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncScheduler.class);
+
+    public enum Priority {
+        HIGH, NORMAL
+    }
+
+    @Autowired
+    private InstagramAccountDirectory accountDirectory;
+
+    @Autowired
+    private CommentService commentService;
+
+    @Autowired
+    private SyncJobService syncJobService;
+
+    @Value("${instagram.sync.scheduler.enabled:true}")
+    private boolean enabled;
+
+    @Value("${instagram.sync.scheduler.workers:4}")
+    private int workers;
+
+    @Value("${instagram.sync.scheduler.initial-interval-ms:300000}")
+    private long initialIntervalMs;
+
+    @Value("${instagram.sync.scheduler.min-interval-ms:60000}")
+    private long minIntervalMs;
+
+    @Value("${instagram.sync.scheduler.max-interval-ms:3600000}")
+    private long maxIntervalMs;
+
+    @Value("${instagram.sync.scheduler.jitter:0.2}")
+    private double jitter;
+
+    private final Map<Integer, BrandSchedule> schedules = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        AtomicLong threadIds = new AtomicLong();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "comment-sync-" + threadIds.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Let other nodes take over what this one had not finished, without waiting out the lease
+        try {
+            syncJobService.releaseLeases(inFlightJobIds());
+        } catch (Exception e) {
+            logger.warn("Could not release sync job leases: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Queues a sync for the brand ahead of scheduled work and returns its job. If one is
+     * already queued it is promoted; if one is running, that job is returned.
+     */
+    public SyncJob requestSync(Integer brandId) {
+        accountDirectory.findConnectedByBrand(brandId)
+                .orElseThrow(() -> new RuntimeException("No Instagram account connected"));
+        return enqueue(brandId, Priority.HIGH, SyncJob.Trigger.MANUAL);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeExpiredJobs() {
+        List<SyncJob> jobs;
+        try {
+            jobs = syncJobService.takeOverExpiredJobs();
+        } catch (Exception e) {
+            logger.warn("Could not take over unfinished sync jobs: {}", e.getMessage());
+            return;
+        }
+        for (SyncJob job : jobs) {
+            logger.info("Resuming sync job {} for brand {} ({} of {} media done)",
+                    job.getId(), job.getBrandId(), job.getMediaDone(), job.getMediaTotal());
+            BrandSchedule schedule = schedules.computeIfAbsent(job.getBrandId(), id -> new BrandSchedule());
+            synchronized (schedule) {
+                // Already queued or running here: that task works on the brand's unfinished job
+                if (schedule.task == null) {
+                    submit(schedule, job, job.getTriggerType() == SyncJob.Trigger.MANUAL ? Priority.HIGH : Priority.NORMAL);
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${instagram.sync.jobs.heartbeat-ms:30000}")
+    public void renewLeases() {
+        List<Long> jobIds = inFlightJobIds();
+        Set<Long> held;
+        try {
+            held = new HashSet<>(syncJobService.renewLeases(jobIds));
+        } catch (Exception e) {
+            logger.warn("Could not renew sync job leases: {}", e.getMessage());
+            return;
+        }
+        for (BrandSchedule schedule : schedules.values()) {
+            synchronized (schedule) {
+                SyncTask task = schedule.task;
+                if (task == null || held.contains(task.jobId) || !jobIds.contains(task.jobId)) {
+                    continue;
+                }
+                if (!task.running && executor.remove(task)) {
+                    schedule.task = null;
+                    logger.warn("Lost the lease on queued sync job {} for brand {}; dropped it", task.jobId, task.brandId);
+                } else {
+                    logger.warn("Lost the lease on running sync job {} for brand {}; it stops at its next write",
+                            task.jobId, task.brandId);
+                }
+            }
+        }
+    }
+
+    @Scheduled(initialDelayString = "${instagram.sync.scheduler.initial-delay-ms:30000}",
+               fixedDelayString = "${instagram.sync.scheduler.tick-ms:15000}")
+    public void enqueueDueSyncs() {
+        resumeExpiredJobs();
+        if (!enabled) {
+            return;
+        }
+        Set<Integer> connected = new HashSet<>();
+        for (InstagramAccount account : accountDirectory.findConnected()) {
+            Integer brandId = account.getBrandId();
+            connected.add(brandId);
+            if (!schedules.containsKey(brandId)) {
+                // Spread first runs over one initial interval instead of syncing everyone at once
+                try {
+                    syncJobService.ensureSchedule(brandId, initialIntervalMs,
+                            ThreadLocalRandom.current().nextLong(initialIntervalMs));
+                    schedules.putIfAbsent(brandId, new BrandSchedule());
+                } catch (Exception e) {
+                    logger.warn("Could not create sync schedule for brand {}: {}", brandId, e.getMessage());
+                }
+            }
+        }
+        for (Integer brandId : syncJobService.findDueBrands()) {
+            BrandSchedule schedule = schedules.get(brandId);
+            // Not connected as far as this node knows, or already queued or running here
+            if (!connected.contains(brandId) || schedule == null || schedule.task != null) {
+                continue;
+            }
+            try {
+                if (syncJobService.claimScheduledRun(brandId)) {
+                    enqueue(brandId, Priority.NORMAL, SyncJob.Trigger.SCHEDULED);
+                }
+            } catch (Exception e) {
+                logger.warn("Could not queue comment sync for brand {}: {}", brandId, e.getMessage());
+            }
+        }
+        // Forget brands that disconnected
+        schedules.keySet().removeIf(brandId -> !connected.contains(brandId) && schedules.get(brandId).task == null);
+    }
+
+    private SyncJob enqueue(Integer brandId, Priority priority, SyncJob.Trigger trigger) {
+        BrandSchedule schedule = schedules.computeIfAbsent(brandId, id -> new BrandSchedule());
+        synchronized (schedule) {
+            SyncTask current = schedule.task;
+            if (current != null && (current.running || priority.ordinal() >= current.priority.ordinal()
+                    || !executor.remove(current))) {
+                return syncJobService.findJob(current.jobId, brandId)
+                        .orElseThrow(() -> new RuntimeException("Sync job not found"));
+            }
+            // Picks up the brand's unfinished job, if any (including the one just dequeued)
+            SyncJob job = syncJobService.openJob(brandId, trigger);
+            if (!syncJobService.isLeasedHere(job)) {
+                logger.debug("Sync job {} for brand {} is leased by {}", job.getId(), brandId, job.getOwner());
+                return job;
+            }
+            submit(schedule, job, priority);
+            return job;
+        }
+    }
+
+    // Called with the schedule's lock held
+    private void submit(BrandSchedule schedule, SyncJob job, Priority priority) {
+        SyncTask task = new SyncTask(job.getBrandId(), job.getId(), priority, sequence.incrementAndGet());
+        schedule.task = task;
+        executor.execute(task);
+    }
+
+    private List<Long> inFlightJobIds() {
+        List<Long> jobIds = new ArrayList<>();
+        for (BrandSchedule schedule : schedules.values()) {
+            synchronized (schedule) {
+                if (schedule.task != null) {
+                    jobIds.add(schedule.task.jobId);
+                }
+            }
+        }
+        return jobIds;
+    }
+
+    private void runSync(SyncTask task) {
+        BrandSchedule schedule = schedules.get(task.brandId);
+        synchronized (schedule) {
+            task.running = true;
+        }
+        long start = System.currentTimeMillis();
+        boolean foundNew = false;
+        boolean leaseLost = false;
+        long retryAfterMs = 0;
+        try {
+            try {
+                SyncJob job = syncJobService.markRunning(task.jobId);
+                int added = commentService.syncComments(job);
+                syncJobService.finish(task.jobId, SyncJob.Status.COMPLETED, null);
+                foundNew = added > 0;
+                logger.info("Comment sync job {} for brand {} ({}) added {} comments in {} ms",
+                        task.jobId, task.brandId, task.priority, added, System.currentTimeMillis() - start);
+            } catch (GraphRateLimiter.RateLimitedException e) {
+                // Not the account's fault: keep its interval and resume the job once the limit clears
+                retryAfterMs = e.getRetryAfterMs();
+                syncJobService.defer(task.jobId, retryAfterMs, e.getMessage());
+                logger.info("Comment sync job {} for brand {} deferred by {} ms (Graph API rate limit)",
+                        task.jobId, task.brandId, retryAfterMs);
+            } catch (SyncJobService.LeaseLostException e) {
+                throw e;
+            } catch (Exception e) {
+                syncJobService.finish(task.jobId, SyncJob.Status.FAILED, e.getMessage());
+                logger.warn("Comment sync job {} for brand {} failed: {}", task.jobId, task.brandId, e.getMessage());
+            }
+        } catch (SyncJobService.LeaseLostException e) {
+            // Another node took the job over and runs (and reschedules) it from here
+            leaseLost = true;
+            logger.warn("Comment sync job {} for brand {} stopped: {}", task.jobId, task.brandId, e.getMessage());
+        } finally {
+            if (!leaseLost) {
+                try {
+                    long intervalMs = syncJobService.findScheduleInterval(task.brandId).orElse(initialIntervalMs);
+                    if (retryAfterMs > 0) {
+                        syncJobService.reschedule(task.brandId, intervalMs, retryAfterMs + jittered(minIntervalMs) / 10);
+                    } else {
+                        intervalMs = foundNew
+                                ? Math.max(minIntervalMs, intervalMs / 2)
+                                : Math.min(maxIntervalMs, intervalMs * 2);
+                        syncJobService.reschedule(task.brandId, intervalMs, jittered(intervalMs));
+                    }
+                } catch (Exception e) {
+                    // The claim runs out and the brand is picked up again later
+                    logger.warn("Could not reschedule comment sync for brand {}: {}", task.brandId, e.getMessage());
+                }
+            }
+            synchronized (schedule) {
+                schedule.task = null;
+            }
+        }
+    }
+
+    private long jittered(long intervalMs) {
+        double factor = 1 + (ThreadLocalRandom.current().nextDouble() * 2 - 1) * jitter;
+        return (long) (intervalMs * factor);
+    }
+
+    // The local side of a brand's schedule: its task queued or running on this node
+    private static final class BrandSchedule {
+        private SyncTask task;
+    }
+
+    private final class SyncTask implements Runnable, Comparable<SyncTask> {
+        private final Integer brandId;
+        private final Long jobId;
+        private final Priority priority;
+        private final long sequence;
+        private volatile boolean running;
+
+        SyncTask(Integer brandId, Long jobId, Priority priority, long sequence) {
+            this.brandId = brandId;
+            this.jobId = jobId;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            runSync(this);
+        }
+
+        @Override
+        public int compareTo(SyncTask other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
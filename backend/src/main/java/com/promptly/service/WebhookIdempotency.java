@@ -0,0 +1,300 @@
+package com.promptly.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recognises webhook redeliveries before they cost any database work.
+ *
+ * Two time-windowed sets are kept, each bounded to webhook.idempotency.max-entries
+ * and expiring entries after webhook.idempotency.window-ms: hashes of delivery bodies
+ * that are durable in the webhook log (a repeated body is acknowledged without being
+ * logged again) and ids of comments a webhook transaction wrote (a partition whose
+ * comments were all written is skipped without opening a transaction). A body is only
+ * recorded once its append succeeded; while it is being appended a copy of it is
+ * reported as in progress, so it is neither acknowledged early nor logged twice.
+ *
+ * Meta redelivers the exact body, so most retries stop at the first set; the second
+ * catches comments repeated across different deliveries and deliveries replayed from
+ * the webhook log after a restart. Comments that were not written, say for an account
+ * not connected yet, are not recorded in the second set, but an identical redelivery
+ * still stops at the first, so they are only stored again when they arrive in a
+ * different body.
+ *
+ * With webhook.idempotency.persist-file set, both sets are saved there every
+ * webhook.idempotency.persist-interval-ms and at shutdown, and loaded at startup.
+ *
+ * Metrics: webhook.idempotency.checks{kind=delivery|comment,result=new|duplicate} and
+ * webhook.idempotency.duplicate-rate{kind}, the share of duplicates over the last
+ * rate interval.
+ */
+@Component
+public class WebhookIdempotency {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookIdempotency.class);
+
+    // A truncated SHA-256 is plenty to tell deliveries apart
+    private static final int HASH_BYTES = 16;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${webhook.idempotency.window-ms:3600000}")
+    private long windowMs;
+
+    @Value("${webhook.idempotency.max-entries:100000}")
+    private int maxEntries;
+
+    @Value("${webhook.idempotency.persist-file:}")
+    private String persistFile;
+
+    private Window deliveries;
+    private Window comments;
+
+    // Hashes of bodies whose append has not finished yet, guarded by this
+    private final Set<String> appending = new HashSet<>();
+
+    /**
+     * Outcome of {@link #claimDelivery}.
+     */
+    public enum DeliveryClaim {
+        /** Not seen before; the caller appends it and then confirms or releases it. */
+        NEW,
+        /** Already durable in the webhook log. */
+        DUPLICATE,
+        /** Another request is still appending the same body. */
+        IN_PROGRESS
+    }
+
+    @PostConstruct
+    public void start() {
+        deliveries = new Window("delivery");
+        comments = new Window("comment");
+        if (!persistFile.isBlank()) {
+            load(Paths.get(persistFile));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        persist();
+    }
+
+    /**
+     * Claims a delivery body for appending. A {@link DeliveryClaim#NEW} claim must be
+     * followed by {@link #confirmDelivery} once the body is durable, or by
+     * {@link #releaseDelivery} if it could not be accepted.
+     */
+    public DeliveryClaim claimDelivery(byte[] body) {
+        String key = hash(body);
+        synchronized (this) {
+            if (deliveries.contains(key)) {
+                return DeliveryClaim.DUPLICATE;
+            }
+            return appending.add(key) ? DeliveryClaim.NEW : DeliveryClaim.IN_PROGRESS;
+        }
+    }
+
+    public void confirmDelivery(byte[] body) {
+        String key = hash(body);
+        synchronized (this) {
+            deliveries.record(key);
+            appending.remove(key);
+        }
+    }
+
+    public void releaseDelivery(byte[] body) {
+        String key = hash(body);
+        synchronized (this) {
+            appending.remove(key);
+        }
+    }
+
+    /**
+     * Whether the comment was recorded as stored within the window.
+     */
+    public boolean isStoredComment(String commentId) {
+        return comments.contains(commentId);
+    }
+
+    /**
+     * Records comments written by a transaction, once it has committed.
+     */
+    public void recordStoredComments(Collection<String> commentIds) {
+        for (String commentId : commentIds) {
+            comments.record(commentId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${webhook.idempotency.persist-interval-ms:60000}")
+    public void persist() {
+        if (persistFile.isBlank()) {
+            return;
+        }
+        Path file = Paths.get(persistFile);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                deliveries.write(writer, "d");
+                comments.write(writer, "c");
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Could not save webhook idempotency window to {}: {}", file, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${webhook.idempotency.rate-interval-ms:60000}")
+    public void rollRates() {
+        deliveries.rollRate();
+        comments.rollRate();
+    }
+
+    private void load(Path file) {
+        if (!Files.exists(file)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ", 3);
+                if (parts.length != 3) {
+                    continue;
+                }
+                long expiresAt = Long.parseLong(parts[1]);
+                if (expiresAt > now) {
+                    (parts[0].equals("d") ? deliveries : comments).restore(parts[2], expiresAt);
+                    loaded++;
+                }
+            }
+            logger.info("Loaded {} webhook idempotency keys from {}", loaded, file);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not load webhook idempotency window from {}: {}", file, e.getMessage());
+        }
+    }
+
+    private String hash(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return Base64.getEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, HASH_BYTES));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Keys with their expiry time, in insertion order, which is also expiry order.
+     */
+    private final class Window {
+        private final LinkedHashMap<String, Long> expiries = new LinkedHashMap<>();
+        private final Counter newCounter;
+        private final Counter duplicateCounter;
+        private final AtomicLong intervalNew = new AtomicLong();
+        private final AtomicLong intervalDuplicates = new AtomicLong();
+        private volatile double duplicateRate;
+
+        Window(String kind) {
+            newCounter = Counter.builder("webhook.idempotency.checks")
+                    .description("Webhook deliveries and comments checked against the idempotency window")
+                    .tags("kind", kind, "result", "new")
+                    .register(meterRegistry);
+            duplicateCounter = Counter.builder("webhook.idempotency.checks")
+                    .description("Webhook deliveries and comments checked against the idempotency window")
+                    .tags("kind", kind, "result", "duplicate")
+                    .register(meterRegistry);
+            Gauge.builder("webhook.idempotency.duplicate-rate", this, window -> window.duplicateRate)
+                    .description("Share of webhook deliveries or comments that were duplicates over the last interval")
+                    .tag("kind", kind)
+                    .register(meterRegistry);
+        }
+
+        // Adds or renews a key without counting it as a check
+        synchronized void record(String key) {
+            long now = System.currentTimeMillis();
+            expire(now);
+            // Re-inserted at the tail, so insertion order stays expiry order
+            expiries.remove(key);
+            expiries.put(key, now + windowMs);
+            if (expiries.size() > maxEntries) {
+                Iterator<String> eldest = expiries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        synchronized boolean contains(String key) {
+            expire(System.currentTimeMillis());
+            if (expiries.containsKey(key)) {
+                duplicate();
+                return true;
+            }
+            newCounter.increment();
+            intervalNew.incrementAndGet();
+            return false;
+        }
+
+        synchronized void restore(String key, long expiresAt) {
+            expiries.put(key, expiresAt);
+        }
+
+        synchronized void write(BufferedWriter writer, String type) throws IOException {
+            expire(System.currentTimeMillis());
+            for (Map.Entry<String, Long> entry : expiries.entrySet()) {
+                writer.write(type + " " + entry.getValue() + " " + entry.getKey());
+                writer.newLine();
+            }
+        }
+
+        void rollRate() {
+            long fresh = intervalNew.getAndSet(0);
+            long duplicates = intervalDuplicates.getAndSet(0);
+            duplicateRate = fresh + duplicates == 0 ? 0 : (double) duplicates / (fresh + duplicates);
+        }
+
+        private void duplicate() {
+            duplicateCounter.increment();
+            intervalDuplicates.incrementAndGet();
+        }
+
+        private void expire(long now) {
+            Iterator<Long> iterator = expiries.values().iterator();
+            while (iterator.hasNext() && iterator.next() <= now) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.promptly.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.NavigableMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable write-ahead log for webhook deliveries.
+ *
+ * POST /api/webhooks appends the raw body here and answers 200 as soon as it is on
+ * disk, so Meta never waits on the database. Records go into memory-mapped segment
+ * files of webhook.log.segment-bytes each (length, CRC32C, payload). Appends are
+ * group-committed: whichever waiting appender finds the segment unflushed forces
+ * everything written so far, so concurrent deliveries share one fsync.
+ *
+ * A reader thread follows the log and hands records, in order, to
+ * {@link WebhookService#processWebhook}, which stores them on its per-account lanes;
+ * at most webhook.log.max-in-flight records are being processed at once. The drained
+ * position (the end of the oldest record not yet stored) is saved to an offset file
+ * every webhook.log.checkpoint-interval-ms, and fully drained segments are deleted.
+ * The reader starts once the application is ready, after schema migrations and the
+ * rest of startup; appends are accepted (and replayed) from then on as well.
+ * On startup everything after the saved position is replayed, so delivery is
+ * at-least-once: processing is idempotent because comments are deduplicated on
+ * comment_id. Unreadable payloads, and deliveries whose processing fails with anything
+ * but a shutdown cancellation, are logged and dropped so draining keeps moving.
+ *
+ * Metrics: webhook.log.records{outcome=appended|processed|dropped} and the
+ * webhook.log.backlog gauge (bytes appended but not yet drained).
+ */
+@Component
+public class WebhookLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookLog.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String OFFSET_FILE = "drain.offset";
+
+    // Record header: payload length, then CRC32C of the payload
+    private static final int HEADER_BYTES = 8;
+
+    @Autowired
+    private WebhookService webhookService;
+
+    @Autowired
+    private WebhookPayloadParser webhookPayloadParser;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${webhook.log.dir:data/webhook-log}")
+    private String directory;
+
+    @Value("${webhook.log.segment-bytes:67108864}")
+    private int segmentBytes;
+
+    @Value("${webhook.log.max-in-flight:64}")
+    private int maxInFlight;
+
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    // Records handed to WebhookService, oldest first; guarded by itself
+    private final ArrayDeque<InFlight> inFlight = new ArrayDeque<>();
+
+    private final Object readable = new Object();
+
+    private final Object checkpointLock = new Object();
+
+    private Path root;
+    private volatile Segment head;
+    private volatile Position drained;
+    private Position checkpointed;
+    private volatile boolean running;
+
+    private Thread reader;
+    private Semaphore dispatchPermits;
+
+    private Counter appendedCounter;
+    private Counter processedCounter;
+    private Counter droppedCounter;
+
+    private record Position(long segment, int offset) {
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        root = Paths.get(directory).toAbsolutePath();
+        Files.createDirectories(root);
+
+        Position saved = readOffsetFile();
+        long lastSegment = 0;
+        try (Stream<Path> files = Files.list(root)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList()) {
+                String name = file.getFileName().toString();
+                long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                lastSegment = Math.max(lastSegment, id);
+                if (saved != null && id < saved.segment()) {
+                    Files.delete(file);
+                    continue;
+                }
+                Segment segment = Segment.recover(id, file);
+                if (segment.written == 0) {
+                    // The head of a run that received nothing
+                    segment.close();
+                    Files.delete(file);
+                } else {
+                    segments.put(id, segment);
+                }
+            }
+        }
+        // Appends always start a fresh segment, so a torn tail of the last one is never overwritten
+        head = Segment.create(lastSegment + 1, segmentPath(lastSegment + 1), segmentBytes);
+        segments.put(head.id, head);
+
+        drained = saved != null ? saved : new Position(segments.firstKey(), 0);
+        checkpointed = drained;
+        long backlog = backlogBytes();
+        if (backlog > 0) {
+            logger.info("Replaying {} bytes of webhook deliveries from {}", backlog, root);
+        }
+
+        appendedCounter = recordCounter("appended");
+        processedCounter = recordCounter("processed");
+        droppedCounter = recordCounter("dropped");
+        Gauge.builder("webhook.log.backlog", this, WebhookLog::backlogBytes)
+                .description("Bytes of webhook deliveries appended but not yet drained")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        // Bounds how far the reader runs ahead of the database
+        dispatchPermits = new Semaphore(maxInFlight);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void startReader() {
+        running = true;
+        reader = new Thread(this::readLoop, "webhook-log-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        Thread started;
+        synchronized (this) {
+            running = false;
+            started = reader;
+        }
+        if (started != null) {
+            started.interrupt();
+            started.join(5000);
+        }
+        // Records still queued on the lanes when WebhookService stops are replayed next time
+        checkpoint();
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    /**
+     * Appends a delivery and returns once it is durable on disk.
+     */
+    public void append(byte[] payload) throws IOException {
+        if (payload.length == 0) {
+            throw new IllegalArgumentException("Empty webhook payload");
+        }
+        if (HEADER_BYTES + payload.length > segmentBytes) {
+            throw new IOException("Webhook payload of " + payload.length + " bytes exceeds webhook.log.segment-bytes");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        Segment segment;
+        int end;
+        synchronized (this) {
+            segment = head;
+            if (segment.written + HEADER_BYTES + payload.length > segmentBytes) {
+                long id = segment.id + 1;
+                segment = Segment.create(id, segmentPath(id), segmentBytes);
+                segments.put(id, segment);
+                head = segment;
+            }
+            int position = segment.written;
+            segment.buffer.putInt(position + 4, (int) crc.getValue());
+            segment.buffer.put(position + HEADER_BYTES, payload);
+            segment.buffer.putInt(position, payload.length);
+            end = position + HEADER_BYTES + payload.length;
+            segment.written = end;
+        }
+        try {
+            segment.flushTo(end);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the webhook log to flush");
+        }
+        appendedCounter.increment();
+        synchronized (readable) {
+            readable.notifyAll();
+        }
+    }
+
+    /**
+     * Saves the drained position and deletes segments that are fully drained.
+     */
+    @Scheduled(fixedDelayString = "${webhook.log.checkpoint-interval-ms:1000}")
+    public void checkpoint() {
+        synchronized (checkpointLock) {
+            Position position = drained;
+            if (position != null && !position.equals(checkpointed)) {
+                saveOffset(position);
+            }
+        }
+    }
+
+    private void saveOffset(Position position) {
+        try {
+            Path temp = root.resolve(OFFSET_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(ByteBuffer.wrap((position.segment() + " " + position.offset() + "\n").getBytes(StandardCharsets.US_ASCII)));
+                channel.force(true);
+            }
+            Files.move(temp, root.resolve(OFFSET_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            checkpointed = position;
+        } catch (IOException e) {
+            logger.warn("Could not save webhook log offset: {}", e.getMessage());
+            return;
+        }
+        for (Segment segment : segments.headMap(position.segment()).values()) {
+            segments.remove(segment.id);
+            segment.close();
+            try {
+                Files.deleteIfExists(segmentPath(segment.id));
+            } catch (IOException e) {
+                logger.warn("Could not delete drained webhook log segment {}: {}", segment.id, e.getMessage());
+            }
+        }
+    }
+
+    private void readLoop() {
+        Position position = drained;
+        while (running) {
+            try {
+                Segment segment = segments.get(position.segment());
+                if (segment == null) {
+                    position = new Position(segments.ceilingKey(position.segment()), 0);
+                    continue;
+                }
+                if (position.offset() < segment.flushed) {
+                    int length = segment.buffer.getInt(position.offset());
+                    byte[] payload = new byte[length];
+                    segment.buffer.get(position.offset() + HEADER_BYTES, payload);
+                    position = new Position(segment.id, position.offset() + HEADER_BYTES + length);
+                    dispatch(payload, position);
+                } else if (segment != head && position.offset() >= segment.written) {
+                    position = new Position(segment.id + 1, 0);
+                } else {
+                    synchronized (readable) {
+                        if (position.offset() >= segment.flushed) {
+                            readable.wait(100);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void dispatch(byte[] payload, Position end) throws InterruptedException {
+        InFlight record = new InFlight(end);
+        dispatchPermits.acquire();
+        synchronized (inFlight) {
+            inFlight.add(record);
+        }
+        CompletableFuture<Void> stored;
+        try {
+            stored = webhookService.processWebhook(webhookPayloadParser.parse(payload));
+        } catch (RejectedExecutionException e) {
+            // Processing has stopped: leave the delivery undrained so it is replayed
+            dispatchPermits.release();
+            return;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Dropping unreadable webhook delivery ({} bytes): {}", payload.length, e.getMessage());
+            droppedCounter.increment();
+            dispatchPermits.release();
+            complete(record);
+            return;
+        }
+        stored.whenComplete((result, error) -> {
+            dispatchPermits.release();
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause == null) {
+                processedCounter.increment();
+            } else if (cause instanceof CancellationException) {
+                // A delivery not stored by shutdown stays undrained and is replayed
+                return;
+            } else {
+                // Anything else would fail again on replay; holding the record back would
+                // stop the drained position, checkpoints and segment cleanup for good
+                logger.error("Dropping webhook delivery ({} bytes) that failed to process", payload.length, cause);
+                droppedCounter.increment();
+            }
+            complete(record);
+        });
+    }
+
+    private void complete(InFlight record) {
+        synchronized (inFlight) {
+            record.done = true;
+            // The drained position only moves past records that are all done
+            while (!inFlight.isEmpty() && inFlight.peek().done) {
+                drained = inFlight.poll().end;
+            }
+        }
+    }
+
+    private Counter recordCounter(String outcome) {
+        return Counter.builder("webhook.log.records")
+                .description("Webhook deliveries appended to or drained from the write-ahead log")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Bytes of deliveries appended but not yet drained into the database.
+     */
+    public long backlogBytes() {
+        Position position = drained;
+        long bytes = 0;
+        for (Segment segment : segments.tailMap(position.segment(), true).values()) {
+            bytes += segment.written - (segment.id == position.segment() ? position.offset() : 0);
+        }
+        return bytes;
+    }
+
+    private Position readOffsetFile() throws IOException {
+        Path file = root.resolve(OFFSET_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        String[] parts = Files.readString(file, StandardCharsets.US_ASCII).trim().split(" ");
+        return new Position(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    private Path segmentPath(long id) {
+        return root.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private static final class InFlight {
+        private final Position end;
+        private boolean done;
+
+        InFlight(Position end) {
+            this.end = end;
+        }
+    }
+
+    /**
+     * One memory-mapped segment file. written is the end of the last appended record,
+     * flushed the end of what has been forced to disk; readers stop at flushed.
+     */
+    private static final class Segment {
+        private final long id;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private volatile int written;
+        private volatile int flushed;
+        private boolean flushing;
+
+        private Segment(long id, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment create(long id, Path path, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(id, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        /**
+         * Opens a segment left by a previous run; its records end at the first one that
+         * is missing or fails its checksum (a write torn by a crash).
+         */
+        static Segment recover(long id, Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            Segment segment = new Segment(id, channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            int size = segment.buffer.capacity();
+            int position = 0;
+            while (position + HEADER_BYTES <= size) {
+                int length = segment.buffer.getInt(position);
+                if (length <= 0 || position + HEADER_BYTES + length > size) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                segment.buffer.get(position + HEADER_BYTES, payload);
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                if ((int) crc.getValue() != segment.buffer.getInt(position + 4)) {
+                    break;
+                }
+                position += HEADER_BYTES + length;
+            }
+            segment.written = position;
+            segment.flushed = position;
+            return segment;
+        }
+
+        /**
+         * Waits until everything up to end is on disk. The first waiter forces all
+         * records written so far; waiters arriving meanwhile are covered by that force
+         * or the next one.
+         */
+        void flushTo(int end) throws InterruptedException {
+            int from;
+            int to;
+            synchronized (this) {
+                while (flushed < end && flushing) {
+                    wait();
+                }
+                if (flushed >= end) {
+                    return;
+                }
+                flushing = true;
+                from = flushed;
+                to = written;
+            }
+            boolean forced = false;
+            try {
+                buffer.force(from, to - from);
+                forced = true;
+            } finally {
+                synchronized (this) {
+                    flushing = false;
+                    if (forced) {
+                        flushed = to;
+                    }
+                    notifyAll();
+                }
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Error closing webhook log segment {}: {}", id, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.promptly.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.promptly.dto.WebhookComment;
+import com.promptly.dto.WebhookEntry;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads Instagram webhook bodies with a streaming parser straight into
+ * {@link WebhookEntry} records, without building a tree of maps first. Only the
+ * fields ingestion uses are kept; everything else is skipped unread.
+ *
+ * Both delivery shapes are understood:
+ * entry[].changes[] with field "comments" and the comment as its value (media.id,
+ * from.id / from.username), and the legacy entry[].comments.data[] (media_id).
+ * A comment's time is its own "timestamp" if sent, otherwise the entry's "time"
+ * (Unix seconds), both converted to UTC.
+ */
+@Component
+public class WebhookPayloadParser {
+
+    private static final String COMMENTS_FIELD = "comments";
+
+    // Graph API style, e.g. "2024-01-15T10:30:00+0000"
+    private static final DateTimeFormatter GRAPH_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * Returns the delivery's entries that name an account. Throws JsonParseException for
+     * bodies that are not a JSON object.
+     */
+    public List<WebhookEntry> parse(byte[] body) throws IOException {
+        List<WebhookEntry> entries = new ArrayList<>();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Webhook body is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("entry".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        WebhookEntry entry = readEntry(parser);
+                        if (entry != null) {
+                            entries.add(entry);
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return entries;
+    }
+
+    private WebhookEntry readEntry(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String accountId = null;
+        LocalDateTime time = null;
+        List<WebhookComment> comments = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("id".equals(field)) {
+                accountId = readString(parser);
+            } else if ("time".equals(field) && value.isNumeric()) {
+                time = LocalDateTime.ofEpochSecond(parser.getLongValue(), 0, ZoneOffset.UTC);
+            } else if ("changes".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    WebhookComment comment = readChange(parser);
+                    if (comment != null) {
+                        comments.add(comment);
+                    }
+                }
+            } else if (COMMENTS_FIELD.equals(field) && value == JsonToken.START_OBJECT) {
+                readLegacyComments(parser, comments);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (accountId == null) {
+            return null;
+        }
+        // "time" may come after the comments, so it is filled in once the entry is read
+        if (time != null) {
+            for (int i = 0; i < comments.size(); i++) {
+                if (comments.get(i).timestamp() == null) {
+                    comments.set(i, comments.get(i).withTimestamp(time));
+                }
+            }
+        }
+        return new WebhookEntry(accountId, comments);
+    }
+
+    private WebhookComment readChange(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        // "field" may come after "value", so the value is read either way
+        String changeField = null;
+        WebhookComment comment = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("field".equals(field)) {
+                changeField = readString(parser);
+            } else if ("value".equals(field) && value == JsonToken.START_OBJECT) {
+                comment = readComment(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return COMMENTS_FIELD.equals(changeField) ? comment : null;
+    }
+
+    private void readLegacyComments(JsonParser parser, List<WebhookComment> comments) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        WebhookComment comment = readComment(parser);
+                        if (comment != null) {
+                            comments.add(comment);
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Reads a comment object (the parser is on its START_OBJECT); null if it has no id.
+     */
+    private WebhookComment readComment(JsonParser parser) throws IOException {
+        String id = null;
+        String text = null;
+        String mediaId = null;
+        String parentId = null;
+        String userId = null;
+        String username = null;
+        int likeCount = 0;
+        LocalDateTime timestamp = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = readString(parser);
+                case "text" -> text = readString(parser);
+                case "media_id" -> mediaId = readString(parser);
+                case "parent_id" -> parentId = readString(parser);
+                case "timestamp" -> timestamp = parseTimestamp(readString(parser));
+                case "like_count" -> {
+                    if (value.isScalarValue()) {
+                        likeCount = parser.getValueAsInt();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                case "media" -> {
+                    if (value == JsonToken.START_OBJECT) {
+                        mediaId = readRef(parser).id();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                case "from" -> {
+                    if (value == JsonToken.START_OBJECT) {
+                        Ref from = readRef(parser);
+                        userId = from.id();
+                        username = from.username();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return id != null ? new WebhookComment(id, text, mediaId, parentId, userId, username, likeCount, timestamp) : null;
+    }
+
+    // Null when missing or unparseable; the entry's time is used instead
+    private LocalDateTime parseTimestamp(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(value, GRAPH_TIMESTAMP).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // Reads the id and username of a nested object such as "from" or "media"
+    private Ref readRef(JsonParser parser) throws IOException {
+        String id = null;
+        String username = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("id".equals(field)) {
+                id = readString(parser);
+            } else if ("username".equals(field)) {
+                username = readString(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Ref(id, username);
+    }
+
+    // The current value as a string, or null (skipping it) if it is an object or array
+    private String readString(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getValueAsString();
+    }
+
+    private record Ref(String id, String username) {
+    }
+}
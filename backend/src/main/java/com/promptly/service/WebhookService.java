@@ -1,87 +1,336 @@
 package com.promptly.service;
 
+import com.promptly.dto.WebhookComment;
+import com.promptly.dto.WebhookEntry;
 import com.promptly.entity.Comment;
 import com.promptly.entity.InstagramAccount;
-import com.promptly.repository.CommentRepository;
-import com.promptly.repository.InstagramAccountRepository;
+import com.promptly.event.CommentChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Stores webhook deliveries drained from the {@link WebhookLog}.
+ *
+ * A delivery's entries are partitioned by Instagram account, and each account always
+ * maps to the same one of webhook.processing.lanes single-threaded lanes. Accounts on
+ * different lanes are processed in parallel while one account's entries are stored in
+ * delivery order. Comments already stored within the {@link WebhookIdempotency}
+ * window are filtered out first. Each partition commits in its own transaction.
+ * Transient database errors (deadlocks, lock timeouts, a lost connection) are retried in
+ * place with backoff, holding the lane so later entries for the account wait behind it,
+ * for at most webhook.processing.max-attempts attempts. Anything else fails the same way
+ * every time: the partition is then stored entry by entry and the failing entries are
+ * dropped, so the lane moves on. Dropped entries are logged with their comment ids and
+ * counted in webhook.processing.dropped{reason}; the next sync fetches those comments
+ * from the Graph API.
+ */
 @Service
 public class WebhookService {
 
+    private static final Logger logger = LoggerFactory.getLogger(WebhookService.class);
+
+    @Autowired
+    private InstagramAccountDirectory accountDirectory;
+
+    @Autowired
+    private CommentCounterService commentCounterService;
+
+    @Autowired
+    private CommentDeduplicator commentDeduplicator;
+
+    @Autowired
+    private CommentBatchWriter commentBatchWriter;
+
     @Autowired
-    private InstagramAccountRepository instagramAccountRepository;
+    private WebhookIdempotency webhookIdempotency;
 
     @Autowired
-    private CommentRepository commentRepository;
-
-    @Transactional
-    @SuppressWarnings("unchecked")
-    public void processWebhook(Map<String, Object> payload) {
-        List<Map<String, Object>> entries = (List<Map<String, Object>>) payload.get("entry");
-        
-        if (entries == null) return;
-
-        for (Map<String, Object> entry : entries) {
-            String instagramAccountId = (String) entry.get("id");
-            
-            InstagramAccount account = instagramAccountRepository
-                    .findByInstagramBusinessAccountId(instagramAccountId)
-                    .orElse(null);
-
-            if (account == null || !account.getIsConnected()) {
-                continue;
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${webhook.processing.lanes:4}")
+    private int laneCount;
+
+    @Value("${webhook.processing.retry-initial-backoff-ms:500}")
+    private long retryInitialBackoffMs;
+
+    @Value("${webhook.processing.retry-max-backoff-ms:30000}")
+    private long retryMaxBackoffMs;
+
+    @Value("${webhook.processing.max-attempts:10}")
+    private int maxAttempts;
+
+    private Counter nonTransientCounter;
+    private Counter exhaustedCounter;
+
+    private TransactionTemplate partitionTransaction;
+
+    private ExecutorService[] lanes;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        partitionTransaction = new TransactionTemplate(transactionManager);
+        nonTransientCounter = droppedCounter("non_transient");
+        exhaustedCounter = droppedCounter("attempts_exhausted");
+        lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            String name = "webhook-lane-" + (i + 1);
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        running = true;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            if (!lane.awaitTermination(10, TimeUnit.SECONDS)) {
+                lane.shutdownNow();
             }
+        }
+    }
 
-            // Process comments
-            @SuppressWarnings("unchecked")
-            Map<String, Object> comments = (Map<String, Object>) entry.get("comments");
-            if (comments != null) {
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> commentData = (List<Map<String, Object>>) comments.get("data");
-                if (commentData != null) {
-                    for (Map<String, Object> commentDataItem : commentData) {
-                        processComment(commentDataItem, account);
-                    }
-                }
+    private Counter droppedCounter(String reason) {
+        return Counter.builder("webhook.processing.dropped")
+                .description("Webhook entries dropped after failing to store")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues a delivery's partitions on their lanes. The future completes once every
+     * partition is stored (or dropped), or fails if processing stopped at shutdown
+     * first. Must be called in delivery order from a single thread to keep each
+     * account's entries in order.
+     */
+    public CompletableFuture<Void> processWebhook(List<WebhookEntry> entries) {
+        Map<String, List<WebhookEntry>> partitions = new LinkedHashMap<>();
+        for (WebhookEntry entry : entries) {
+            if (!entry.comments().isEmpty()) {
+                partitions.computeIfAbsent(entry.instagramAccountId(), id -> new ArrayList<>()).add(entry);
             }
         }
+
+        CompletableFuture<?>[] stored = new CompletableFuture<?>[partitions.size()];
+        int i = 0;
+        for (Map.Entry<String, List<WebhookEntry>> partition : partitions.entrySet()) {
+            ExecutorService lane = lanes[Math.floorMod(partition.getKey().hashCode(), lanes.length)];
+            stored[i++] = CompletableFuture.runAsync(() -> processPartition(partition.getKey(), partition.getValue()), lane);
+        }
+        return CompletableFuture.allOf(stored);
     }
 
-    @SuppressWarnings("unchecked")
-    private void processComment(Map<String, Object> commentData, InstagramAccount account) {
-        String commentId = (String) commentData.get("id");
-        
-        // Check if comment already exists
-        if (commentRepository.findByCommentId(commentId).isPresent()) {
+    private void processPartition(String instagramAccountId, List<WebhookEntry> delivered) {
+        List<WebhookEntry> entries = unstoredEntries(delivered);
+        if (entries.isEmpty()) {
+            return;
+        }
+        RuntimeException failure = store(instagramAccountId, entries);
+        if (failure == null) {
             return;
         }
+        if (isTransient(failure) || entries.size() == 1) {
+            drop(instagramAccountId, entries, failure);
+            return;
+        }
+        // A permanent failure usually comes from one bad comment: store the entries one by
+        // one so only the ones that fail are dropped
+        for (WebhookEntry entry : entries) {
+            RuntimeException entryFailure = store(instagramAccountId, List.of(entry));
+            if (entryFailure != null) {
+                drop(instagramAccountId, List.of(entry), entryFailure);
+            }
+        }
+    }
+
+    /**
+     * Stores the entries in one transaction, retrying transient database errors with
+     * backoff, at most webhook.processing.max-attempts times in all. Returns the error it
+     * gave up on, or null once stored. Throws CancellationException if processing stops
+     * while it waits, so the delivery stays in the log and is replayed.
+     */
+    private RuntimeException store(String instagramAccountId, List<WebhookEntry> entries) {
+        long backoffMs = retryInitialBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                List<String> written = partitionTransaction.execute(status -> storeEntries(instagramAccountId, entries));
+                webhookIdempotency.recordStoredComments(written);
+                return null;
+            } catch (RuntimeException e) {
+                if (!isTransient(e) || attempt >= maxAttempts) {
+                    return e;
+                }
+                if (!running) {
+                    throw new CancellationException("Shutting down before webhook entries for " + instagramAccountId + " were stored");
+                }
+                logger.warn("Could not store webhook entries for account {} (attempt {} of {}), retrying in {} ms: {}",
+                        instagramAccountId, attempt, maxAttempts, backoffMs, e.getMessage());
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted storing webhook entries for " + instagramAccountId);
+                }
+                backoffMs = Math.min(backoffMs * 2, retryMaxBackoffMs);
+            }
+        }
+    }
 
+    /**
+     * Errors worth retrying: deadlocks, lock timeouts and other transient failures, and a
+     * lost or unavailable database connection. Constraint violations, over-long values
+     * and bad SQL fail the same way every time.
+     */
+    private static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private void drop(String instagramAccountId, List<WebhookEntry> entries, RuntimeException failure) {
+        boolean exhausted = isTransient(failure);
+        (exhausted ? exhaustedCounter : nonTransientCounter).increment(entries.size());
+        List<String> commentIds = entries.stream()
+                .flatMap(entry -> entry.comments().stream())
+                .map(WebhookComment::id)
+                .toList();
+        logger.error("Dropping {} webhook entries for account {} ({}); comments {} are left to the next sync",
+                entries.size(), instagramAccountId, exhausted ? "retries exhausted" : "permanent failure", commentIds, failure);
+    }
+
+    /**
+     * Drops comments the idempotency window already saw stored, and entries left with
+     * none, so a redelivered partition costs no transaction at all.
+     */
+    private List<WebhookEntry> unstoredEntries(List<WebhookEntry> entries) {
+        List<WebhookEntry> unstored = new ArrayList<>(entries.size());
+        for (WebhookEntry entry : entries) {
+            List<WebhookComment> comments = entry.comments().stream()
+                    .filter(comment -> !webhookIdempotency.isStoredComment(comment.id()))
+                    .toList();
+            if (!comments.isEmpty()) {
+                unstored.add(comments.size() == entry.comments().size()
+                        ? entry
+                        : new WebhookEntry(entry.instagramAccountId(), comments));
+            }
+        }
+        return unstored;
+    }
+
+    /**
+     * Stores the entries and returns the ids of the comments written (inserted, or found
+     * already stored by the insert); nothing for an unknown or disconnected account.
+     */
+    private List<String> storeEntries(String instagramAccountId, List<WebhookEntry> entries) {
+        InstagramAccount account = accountDirectory
+                .findByBusinessAccountId(instagramAccountId)
+                .filter(found -> Boolean.TRUE.equals(found.getIsConnected()))
+                // The snapshot may predate a connect made through another instance
+                .or(() -> accountDirectory.reloadByBusinessAccountId(instagramAccountId))
+                .orElse(null);
+
+        if (account == null || !Boolean.TRUE.equals(account.getIsConnected())) {
+            logger.warn("Dropping {} webhook entries for {} Instagram account {}", entries.size(),
+                    account == null ? "unknown" : "disconnected", instagramAccountId);
+            return List.of();
+        }
+
+        List<String> written = new ArrayList<>();
+        for (WebhookEntry entry : entries) {
+            written.addAll(processComments(entry.comments(), account));
+        }
+        return written;
+    }
+
+    /**
+     * Writes the entry's new comments in one batch. Webhook payloads carry no
+     * like_count, so comments we already have are left untouched rather than upserted;
+     * only the rows the insert actually wrote are counted and published. Returns the ids
+     * of the comments written.
+     */
+    private List<String> processComments(List<WebhookComment> comments, InstagramAccount account) {
+        // Skip the comments known to be stored, for the whole entry at once
+        Set<String> candidates = commentDeduplicator.claimCandidates(comments.stream()
+                .map(WebhookComment::id)
+                .toList());
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+
+        List<Comment> toWrite = new ArrayList<>();
+        Set<String> pending = new HashSet<>(candidates);
+        for (WebhookComment webhookComment : comments) {
+            if (pending.remove(webhookComment.id())) {
+                toWrite.add(toComment(webhookComment, account));
+            }
+        }
+
+        List<Comment> inserted = commentBatchWriter.insertNew(toWrite);
+        commentCounterService.recordInsert(account.getBrandId(), Comment.CommentStatus.OPEN, inserted.size());
+        for (Comment comment : inserted) {
+            eventPublisher.publishEvent(new CommentChangedEvent(account.getBrandId(), CommentChangedEvent.Type.CREATED, comment));
+        }
+        return toWrite.stream()
+                .map(Comment::getCommentId)
+                .toList();
+    }
+
+    private Comment toComment(WebhookComment webhookComment, InstagramAccount account) {
         Comment comment = new Comment();
         comment.setBrandId(account.getBrandId());
         comment.setInstagramAccountId(account.getId());
-        comment.setCommentId(commentId);
-        comment.setMediaId((String) commentData.get("media_id"));
-        comment.setParentId((String) commentData.get("parent_id"));
-        comment.setText((String) commentData.get("text"));
-        
-        Map<String, Object> from = (Map<String, Object>) commentData.get("from");
-        if (from != null) {
-            comment.setUsername((String) from.get("username"));
-            comment.setUserId((String) from.get("id"));
-        }
-        
-        comment.setTimestamp(LocalDateTime.now()); // Parse from timestamp if available
-        comment.setLikeCount(((Number) commentData.getOrDefault("like_count", 0)).intValue());
+        comment.setCommentId(webhookComment.id());
+        comment.setMediaId(webhookComment.mediaId());
+        comment.setParentId(webhookComment.parentId());
+        comment.setText(webhookComment.text());
+        comment.setUsername(webhookComment.username());
+        comment.setUserId(webhookComment.userId());
+        comment.setTimestamp(webhookComment.timestamp() != null ? webhookComment.timestamp() : LocalDateTime.now());
+        comment.setLikeCount(webhookComment.likeCount());
         comment.setStatus(Comment.CommentStatus.OPEN);
-
-        commentRepository.save(comment);
+        return comment;
     }
 }
-
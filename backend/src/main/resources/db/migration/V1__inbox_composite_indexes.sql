@@ -0,0 +1,12 @@
+-- Inbox listing filtered by status:
+--   WHERE brand_id = ? AND status = ? [AND (timestamp, id) < cursor] ORDER BY timestamp DESC, id DESC
+CREATE INDEX idx_comments_brand_status_timestamp ON comments (brand_id, status, timestamp, id);
+
+-- Inbox listing without a status filter
+CREATE INDEX idx_comments_brand_timestamp ON comments (brand_id, timestamp, id);
+
+-- Reply threads, newest first
+CREATE INDEX idx_replies_comment_sent_at ON replies (comment_id, sent_at);
+
+-- Admin activity log, newest first
+CREATE INDEX idx_admin_activity_logs_created_at_id ON admin_activity_logs (created_at, id);
@@ -0,0 +1,14 @@
+-- Per-brand comment counts by status, kept in step with the comments table
+CREATE TABLE IF NOT EXISTS comment_counters (
+  brand_id INT NOT NULL,
+  status ENUM('OPEN', 'REPLIED', 'HIDDEN') NOT NULL,
+  comment_count BIGINT NOT NULL DEFAULT 0,
+  updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  PRIMARY KEY (brand_id, status),
+  FOREIGN KEY (brand_id) REFERENCES brands(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Backfill from existing comments; the reconciliation job keeps it correct afterwards
+INSERT INTO comment_counters (brand_id, status, comment_count)
+SELECT brand_id, status, COUNT(*) FROM comments GROUP BY brand_id, status
+ON DUPLICATE KEY UPDATE comment_count = VALUES(comment_count);
@@ -0,0 +1,10 @@
+-- Per-media progress of comment sync, so incremental syncs only read what is new
+CREATE TABLE IF NOT EXISTS media_sync_watermarks (
+  instagram_account_id INT NOT NULL,
+  media_id VARCHAR(255) NOT NULL,
+  last_comment_at TIMESTAMP NULL,
+  comments_count INT NOT NULL DEFAULT 0,
+  synced_at TIMESTAMP NULL,
+  PRIMARY KEY (instagram_account_id, media_id),
+  FOREIGN KEY (instagram_account_id) REFERENCES instagram_accounts(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
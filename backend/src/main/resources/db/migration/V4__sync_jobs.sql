@@ -0,0 +1,32 @@
+-- Comment syncs run as persisted jobs: progress can be polled, and a job interrupted
+-- by a restart resumes from its per-media checkpoints
+CREATE TABLE IF NOT EXISTS sync_jobs (
+  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  brand_id INT NOT NULL,
+  instagram_account_id INT NOT NULL,
+  trigger_type ENUM('MANUAL', 'SCHEDULED') NOT NULL,
+  status ENUM('QUEUED', 'RUNNING', 'COMPLETED', 'FAILED') NOT NULL DEFAULT 'QUEUED',
+  media_total INT NOT NULL DEFAULT 0,
+  media_done INT NOT NULL DEFAULT 0,
+  media_failed INT NOT NULL DEFAULT 0,
+  comments_added INT NOT NULL DEFAULT 0,
+  error VARCHAR(1000) NULL,
+  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+  started_at TIMESTAMP NULL,
+  finished_at TIMESTAMP NULL,
+  updated_at TIMESTAMP NULL,
+  INDEX idx_sync_jobs_brand (brand_id, id),
+  INDEX idx_sync_jobs_status (status, finished_at),
+  FOREIGN KEY (brand_id) REFERENCES brands(id) ON DELETE CASCADE,
+  FOREIGN KEY (instagram_account_id) REFERENCES instagram_accounts(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS sync_job_checkpoints (
+  job_id BIGINT NOT NULL,
+  media_id VARCHAR(255) NOT NULL,
+  comments_count INT NULL,
+  status ENUM('PENDING', 'DONE', 'FAILED') NOT NULL DEFAULT 'PENDING',
+  updated_at TIMESTAMP NULL,
+  PRIMARY KEY (job_id, media_id),
+  FOREIGN KEY (job_id) REFERENCES sync_jobs(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
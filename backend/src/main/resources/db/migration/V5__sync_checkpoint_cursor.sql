@@ -0,0 +1,3 @@
+-- Next comments page to request for a media item a sync job has started reading, so a
+-- resumed job continues mid-media instead of re-reading its first pages
+ALTER TABLE sync_job_checkpoints ADD COLUMN next_page TEXT NULL AFTER comments_count;
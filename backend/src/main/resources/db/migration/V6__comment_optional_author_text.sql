@@ -0,0 +1,6 @@
+-- Ingested comments may arrive without text or author (webhook payloads often omit
+-- "from"); store NULL rather than an empty string that looks like real data
+ALTER TABLE comments
+    MODIFY text TEXT NULL,
+    MODIFY username VARCHAR(255) NULL,
+    MODIFY user_id VARCHAR(255) NULL;
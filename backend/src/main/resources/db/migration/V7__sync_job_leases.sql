@@ -0,0 +1,6 @@
+-- A node running a sync job holds a lease on it, renewed by a heartbeat. Other nodes
+-- leave the job alone until the lease expires, then take it over from its checkpoints
+ALTER TABLE sync_jobs
+    ADD COLUMN owner VARCHAR(100) NULL AFTER status,
+    ADD COLUMN lease_expires_at TIMESTAMP NULL AFTER owner,
+    ADD INDEX idx_sync_jobs_lease (status, lease_expires_at);
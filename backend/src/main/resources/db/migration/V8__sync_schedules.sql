@@ -0,0 +1,11 @@
+-- When each brand's next background sync is due, shared by all nodes. A node claims a
+-- due brand by moving next_run_at past a lease, so only one node syncs it per run
+CREATE TABLE IF NOT EXISTS sync_schedules (
+  brand_id INT PRIMARY KEY,
+  interval_ms BIGINT NOT NULL,
+  next_run_at TIMESTAMP(3) NOT NULL,
+  owner VARCHAR(100) NULL,
+  updated_at TIMESTAMP NULL,
+  INDEX idx_sync_schedules_due (next_run_at),
+  FOREIGN KEY (brand_id) REFERENCES brands(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -204,7 +204,7 @@ export default function InboxPage() {
                   <div className="flex items-center space-x-3">
                     <div className="w-10 h-10 bg-primary-100 rounded-full flex items-center justify-center">
                       <span className="text-primary-600 font-semibold">
-                        {selectedComment.username.charAt(0).toUpperCase()}
+                        {(selectedComment.username ?? '?').charAt(0).toUpperCase()}
                       </span>
                     </div>
                     <div>
@@ -59,8 +59,8 @@ export interface Comment {
   id: number;
   comment_id: string;
   media_id: string | null;
-  text: string;
-  username: string;
+  text: string | null;
+  username: string | null;
   timestamp: string;
   status: 'OPEN' | 'REPLIED';
   like_count: number;
@@ -83,6 +83,20 @@ export interface InstagramAccount {
   last_sync_at: string | null;
 }
 
+export interface SyncJob {
+  job_id: number;
+  status: 'queued' | 'running' | 'completed' | 'failed';
+  trigger: 'manual' | 'scheduled';
+  media_total: number;
+  media_done: number;
+  media_failed: number;
+  comments_added: number;
+  error: string | null;
+  created_at: string;
+  started_at: string | null;
+  finished_at: string | null;
+}
+
 export interface Brand {
   id: number;
   name: string;
@@ -125,10 +139,20 @@ export const commentsAPI = {
     const response = await api.post(`/comments/${commentId}/reply`, { text });
     return response.data;
   },
-  sync: async (): Promise<{ message: string; comments_added: number }> => {
+  sync: async (): Promise<SyncJob & { message: string }> => {
     const response = await api.post('/comments/sync');
     return response.data;
   },
+  getSyncJob: async (jobId: number): Promise<{ job: SyncJob }> => {
+    const response = await api.get(`/comments/sync/${jobId}`);
+    return response.data;
+  },
+  // EventSource cannot send the Authorization header, so the stream is opened with a
+  // short-lived stream-only token. Fetch a new one before reconnecting after an error.
+  openStream: async (): Promise<EventSource> => {
+    const response = await api.post('/comments/stream/token');
+    return new EventSource(`${API_URL}/api/comments/stream?access_token=${encodeURIComponent(response.data.token)}`);
+  },
 };
 
 // Instagram API